@@ -0,0 +1,107 @@
+package org.kunstemi.fastforwardsignatures.benchmark;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.kunstemi.fastforwardsignatures.FFSHKey;
+import org.kunstemi.fastforwardsignatures.ffh.PQPair;
+import org.kunstemi.fastforwardsignatures.ffh.RecurrenceCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * RecurrenceCalculator.calculate by modulus, backend and jump size.  backend "auto" is what
+ * RecurrenceCalculator.create picks (the limb calculators), "bigint" the plain BigInteger base class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CalculatorBenchmark {
+
+	@Param({"256", "384", "prime379"})
+	public String modulus;
+
+	@Param({"auto", "bigint"})
+	public String backend;
+
+	@Param({"32", "128", "290"})
+	public int jumpBits;
+
+	protected RecurrenceCalculator calculator;
+	protected BigInteger p;
+	protected BigInteger q;
+	protected BigInteger n;
+	protected BigInteger nPlus;
+
+	@Setup
+	public void setup() {
+		BigInteger m = modulus(modulus);
+		calculator = "bigint".equals(backend) ? new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m)
+				: RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, m);
+		Random random = new Random(1);
+		p = new BigInteger(m.bitLength() - 1, random);
+		q = new BigInteger(m.bitLength() - 1, random);
+		n = new BigInteger(jumpBits, random);
+		nPlus = new BigInteger(jumpBits, random).setBit(jumpBits - 1);
+		calculator.precompute(nPlus);
+	}
+
+	@Benchmark
+	public PQPair calculate() {
+		return calculator.calculate(p, q, n, nPlus);
+	}
+
+	// the calculator is shared, each thread jumps through the same tables
+	@Benchmark
+	@Threads(Threads.MAX)
+	public PQPair calculateShared() {
+		return calculator.calculate(p, q, n, nPlus);
+	}
+
+	protected static BigInteger modulus(String name) {
+		if ("256".equals(name)) {
+			return FFSHKey.DEFAULT_MODULO_256;
+		} else if ("384".equals(name)) {
+			return FFSHKey.DEFAULT_MODULO_384;
+		}
+		return BigInteger.probablePrime(379, new Random(7));
+	}
+}
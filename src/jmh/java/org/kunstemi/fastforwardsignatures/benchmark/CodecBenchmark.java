@@ -0,0 +1,93 @@
+package org.kunstemi.fastforwardsignatures.benchmark;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.kunstemi.fastforwardsignatures.FFSHKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Encoding and decoding of the modulus plus four values, as done for every key and signature.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CodecBenchmark {
+
+	@Param({"256", "384", "prime379"})
+	public String modulus;
+
+	protected BigInteger[] vals;
+	protected byte[] encoded;
+	protected ByteBuffer buffer;
+
+	@Setup
+	public void setup() throws IOException {
+		BigInteger m = CalculatorBenchmark.modulus(modulus);
+		Random random = new Random(3);
+		vals = new BigInteger[5];
+		vals[0] = m;
+		for (int ii = 1; ii < 5; ++ii) {
+			vals[ii] = new BigInteger(m.bitLength() + 8, random).mod(m);
+		}
+		encoded = FFSHKey.toSingle(vals);
+		buffer = ByteBuffer.allocateDirect(encoded.length);
+	}
+
+	@Benchmark
+	public byte[] toSingle() throws IOException {
+		return FFSHKey.toSingle(vals);
+	}
+
+	@Benchmark
+	public BigInteger[] toArray() throws IOException {
+		return FFSHKey.toArray(encoded);
+	}
+
+	@Benchmark
+	public ByteBuffer encodeBuffer() {
+		buffer.clear();
+		FFSHKey.encode(vals, buffer);
+		return buffer;
+	}
+}
@@ -0,0 +1,127 @@
+package org.kunstemi.fastforwardsignatures.benchmark;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.KeyPair;
+import java.security.SignatureException;
+import java.util.concurrent.TimeUnit;
+
+import org.kunstemi.fastforwardsignatures.FFSHKey;
+import org.kunstemi.fastforwardsignatures.FFSHPrivateKey;
+import org.kunstemi.fastforwardsignatures.FFSHPublicKey;
+import org.kunstemi.fastforwardsignatures.SignatureUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Key generation, signing and verification through the Signature API (one SignatureUnit per thread, as the
+ * API requires) and, for the multi-threaded variants, through the thread safe digest methods of one shared unit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SignatureBenchmark {
+
+	@Param({"256", "384"})
+	public String modulus;
+
+	protected SignatureUnit unit;
+	protected KeyPair keyPair;
+	protected byte[] message;
+	protected byte[] digest;
+	protected byte[] signature;
+
+	@Setup
+	public void setup() throws Exception {
+		unit = new SignatureUnit(CalculatorBenchmark.modulus(modulus));
+		keyPair = unit.createRandomKeyPair();
+		message = new byte[256];
+		digest = SignatureUnit.localHasher().digest(message);
+		unit.initSign(keyPair.getPrivate());
+		unit.update(message);
+		signature = unit.sign();
+	}
+
+	@Benchmark
+	public KeyPair keyGeneration() {
+		return unit.createRandomKeyPair();
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public KeyPair keyGenerationThreads() {
+		return unit.createRandomKeyPair();
+	}
+
+	@Benchmark
+	public byte[] sign() throws Exception {
+		unit.initSign(keyPair.getPrivate());
+		unit.update(message);
+		return unit.sign();
+	}
+
+	@Benchmark
+	public boolean verify() throws Exception {
+		unit.initVerify(keyPair.getPublic());
+		unit.update(message);
+		return unit.verify(signature);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public byte[] signThreads(Shared shared) throws SignatureException {
+		return shared.unit.signDigest((FFSHPrivateKey) keyPair.getPrivate(), digest);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public boolean verifyThreads(Shared shared) throws SignatureException {
+		return shared.unit.verifyDigest((FFSHPublicKey) keyPair.getPublic(), digest, signature, SignatureUnit.localHasher());
+	}
+
+	// the one unit every thread signs and verifies through
+	@State(Scope.Benchmark)
+	public static class Shared {
+		protected SignatureUnit unit;
+
+		@Setup
+		public void setup(SignatureBenchmark benchmark) {
+			unit = new SignatureUnit(CalculatorBenchmark.modulus(benchmark.modulus));
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Common plumbing for the batch signer and verifier - runs one task per item over an executor, in contiguous 
+ * chunks, all sharing the one read-only calculator of the given SignatureUnit.
+ */
+public abstract class BatchOperation {
+
+	// split each batch into roughly this many tasks per worker thread, to even out uneven items
+	protected final static int TASKS_PER_THREAD = 4;
+
+	protected final SignatureUnit unit;
+	protected final Executor executor;
+	protected final int parallelism;
+
+	protected BatchOperation(SignatureUnit unit) {
+		this(unit, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	protected BatchOperation(SignatureUnit unit, Executor executor, int parallelism) {
+		this.unit = unit;
+		this.executor = executor;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	// Runs task for 0..count-1 in contiguous chunks on the executor, returning once all are done
+	protected void forEach(int count, IndexTask task) {
+		int tasks = Math.max(1, Math.min(count, parallelism * TASKS_PER_THREAD));
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks];
+		for (int tt = 0; tt < tasks; ++tt) {
+			final int from = (int) ((long) count * tt / tasks);
+			final int to = (int) ((long) count * (tt + 1) / tasks);
+			futures[tt] = CompletableFuture.runAsync(() -> {
+				for (int ii = from; ii < to; ++ii) {
+					task.run(ii);
+				}
+			}, executor);
+		}
+		CompletableFuture.allOf(futures).join();
+	}
+
+	protected interface IndexTask {
+		void run(int index);
+	}
+}
@@ -0,0 +1,100 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.MessageDigest;
+import java.util.concurrent.Executor;
+
+/*
+ * Signs many (private key, message) pairs in one call, spreading the work over an executor.
+ *
+ * Every item is hashed, run through both chains and encoded on a worker thread, all sharing the one
+ * calculator of the given SignatureUnit (which is read-only once built).  Each item succeeds or fails on
+ * its own - a bad key is reported in the result for its slot and does not abort the rest of the batch.
+ */
+public class BatchSigner extends BatchOperation {
+
+	public BatchSigner(SignatureUnit unit) {
+		super(unit);
+	}
+
+	public BatchSigner(SignatureUnit unit, Executor executor, int parallelism) {
+		super(unit, executor, parallelism);
+	}
+
+	public Result sign(FFSHPrivateKey[] keys, byte[][] messages) {
+		if (keys.length != messages.length) {
+			throw new IllegalArgumentException("Got "+keys.length+" keys for "+messages.length+" messages");
+		}
+		final Result result = new Result(keys.length);
+		forEach(keys.length, ii -> {
+			try {
+				MessageDigest hasher = SignatureUnit.localHasher();
+				result.signatures[ii] = unit.signDigest(keys[ii], hasher.digest(messages[ii]));
+			} catch (Exception e) {
+				result.failures[ii] = e;
+			}
+		});
+		return result;
+	}
+
+	public static class Result {
+		protected final byte[][] signatures;
+		protected final Exception[] failures;
+
+		protected Result(int size) {
+			signatures = new byte[size][];
+			failures = new Exception[size];
+		}
+
+		public int size() {
+			return signatures.length;
+		}
+
+		public boolean isSigned(int index) {
+			return failures[index]==null;
+		}
+
+		// null if the item failed
+		public byte[] getSignature(int index) {
+			return signatures[index];
+		}
+
+		// null if the item was signed
+		public Exception getFailure(int index) {
+			return failures[index];
+		}
+
+		public int getFailureCount() {
+			int count = 0;
+			for (Exception e : failures) {
+				if (e!=null) {
+					++count;
+				}
+			}
+			return count;
+		}
+	}
+}
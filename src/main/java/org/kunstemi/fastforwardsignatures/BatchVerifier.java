@@ -0,0 +1,155 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.MessageDigest;
+import java.util.BitSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Verifies bursts of (public key, message, signature) triples over an executor.
+ *
+ * Each worker thread reuses one SHA-256 digest for both the message and the end states, and the
+ * calculator is shared, so the per item cost is the two chains and nothing stateful.  A triple that fails
+ * to parse counts as an error (and is not valid) without affecting the others.  Running totals are kept
+ * across batches for throughput and reject monitoring.
+ */
+public class BatchVerifier extends BatchOperation {
+
+	protected final LongAdder totalVerified = new LongAdder();
+	protected final LongAdder totalRejected = new LongAdder();
+	protected final LongAdder totalErrors = new LongAdder();
+	protected final LongAdder totalNanos = new LongAdder();
+
+	public BatchVerifier(SignatureUnit unit) {
+		super(unit);
+	}
+
+	public BatchVerifier(SignatureUnit unit, Executor executor, int parallelism) {
+		super(unit, executor, parallelism);
+	}
+
+	public Result verify(FFSHPublicKey[] keys, byte[][] messages, byte[][] signatures) {
+		if (keys.length != messages.length || keys.length != signatures.length) {
+			throw new IllegalArgumentException("Got "+keys.length+" keys, "+messages.length+" messages and "+signatures.length+" signatures");
+		}
+		long start = System.nanoTime();
+		// 0 rejected, 1 valid, 2 error - a BitSet cannot be written from several threads
+		final byte[] verdicts = new byte[keys.length];
+		forEach(keys.length, ii -> {
+			try {
+				MessageDigest hasher = SignatureUnit.localHasher();
+				byte[] digest = hasher.digest(messages[ii]);
+				verdicts[ii] = unit.verifyDigest(keys[ii], digest, signatures[ii], hasher) ? (byte) 1 : 0;
+			} catch (Exception e) {
+				verdicts[ii] = 2;
+			}
+		});
+
+		Result result = new Result(keys.length, System.nanoTime() - start);
+		for (int ii = 0; ii < verdicts.length; ++ii) {
+			if (verdicts[ii]==1) {
+				result.valid.set(ii);
+			} else if (verdicts[ii]==2) {
+				++result.errors;
+			} else {
+				++result.rejected;
+			}
+		}
+		totalVerified.add(result.valid.cardinality());
+		totalRejected.add(result.rejected);
+		totalErrors.add(result.errors);
+		totalNanos.add(result.elapsedNanos);
+		return result;
+	}
+
+	public long getTotalVerified() {
+		return totalVerified.sum();
+	}
+
+	public long getTotalRejected() {
+		return totalRejected.sum();
+	}
+
+	public long getTotalErrors() {
+		return totalErrors.sum();
+	}
+
+	// items checked per second over all batches so far
+	public double getThroughput() {
+		long nanos = totalNanos.sum();
+		return nanos==0 ? 0 : (totalVerified.sum()+totalRejected.sum()+totalErrors.sum()) * 1e9 / nanos;
+	}
+
+	public static class Result {
+		protected final BitSet valid;
+		protected final int size;
+		protected final long elapsedNanos;
+		protected int rejected;
+		protected int errors;
+
+		protected Result(int size, long elapsedNanos) {
+			this.valid = new BitSet(size);
+			this.size = size;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isValid(int index) {
+			return valid.get(index);
+		}
+
+		// bit i is set when triple i verified
+		public BitSet getValid() {
+			return (BitSet) valid.clone();
+		}
+
+		public boolean allValid() {
+			return valid.cardinality()==size;
+		}
+
+		// well formed signatures that did not match
+		public int getRejected() {
+			return rejected;
+		}
+
+		// triples that could not be checked at all, e.g. malformed signatures
+		public int getErrors() {
+			return errors;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public double getThroughput() {
+			return elapsedNanos==0 ? 0 : size * 1e9 / elapsedNanos;
+		}
+	}
+}
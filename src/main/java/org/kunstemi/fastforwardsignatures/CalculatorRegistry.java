@@ -0,0 +1,191 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.kunstemi.fastforwardsignatures.ffh.RecurrenceCalculator;
+import org.kunstemi.fastforwardsignatures.ffh.RelationTableFile;
+
+/*
+ * One warmed calculator per (coefficients, modulus) for the whole process.
+ *
+ * A calculator is only ever read once SignatureUnit has built its tables, so every unit with the same
+ * parameters can share one.  The first request for a combination builds and warms it outside any map lock -
+ * concurrent first requests for the same key wait on that one build's future, other keys are not held up - and every later SignatureUnit, including the short
+ * lived ones from SignatureUnit.signature(), starts with all relations in place.
+ *
+ * Registered parameter sets stay for the life of the process.  Any other combination is kept only among the
+ * last MAX_UNREGISTERED built (oldest evicted first), so arbitrary moduli cannot grow the registry without
+ * bound; remove() drops an entry explicitly.  Ad-hoc random moduli (SignatureUnit(SecureRandom)) do not come
+ * through here at all.
+ *
+ * When the system property ffsh.tableDir names a directory, the tables of each calculator are loaded from a
+ * RelationTableFile there instead of being built, and written there on the first build - so later processes
+ * start by mapping the file.  A missing, stale or damaged file just means the tables are built again.
+ * The directory is trusted: a table file decides the relations every later verification uses, and its checks
+ * cannot tell a carefully altered file from a good one.  So it must be private to the user running the
+ * processes - files or directories owned by anyone else, or writable by group or others, are ignored (see
+ * RelationTableFile) and the tables built instead.  Never point it at a shared directory such as /tmp.
+ */
+public final class CalculatorRegistry {
+
+	public final static String TABLE_DIR_PROPERTY = "ffsh.tableDir";
+
+	public final static int MAX_UNREGISTERED = 16;
+
+	protected final static ConcurrentHashMap<Key, CompletableFuture<RecurrenceCalculator>> calculators = new ConcurrentHashMap<>();
+	// unregistered entries in the order they were built, for eviction
+	protected final static ConcurrentLinkedQueue<Key> unregistered = new ConcurrentLinkedQueue<>();
+
+	private CalculatorRegistry() {
+	}
+
+	public static RecurrenceCalculator get(ParameterSet set) {
+		return get(set.coefficients, set.modulus);
+	}
+
+	public static RecurrenceCalculator get(int[] coefficients, BigInteger modulus) {
+		if (coefficients.length != 6) {
+			throw new IllegalArgumentException("Need the six coefficients a, b, c, d, f, g");
+		}
+		Key key = new Key(coefficients.clone(), modulus);
+		CompletableFuture<RecurrenceCalculator> future = calculators.get(key);
+		if (future == null) {
+			CompletableFuture<RecurrenceCalculator> created = new CompletableFuture<>();
+			future = calculators.putIfAbsent(key, created);
+			if (future == null) {
+				// this thread builds, everyone else asking for the key waits on the future
+				try {
+					created.complete(build(key));
+				} catch (RuntimeException | Error e) {
+					calculators.remove(key, created);
+					created.completeExceptionally(e);
+					throw e;
+				}
+				if (ParameterSet.find(key.coefficients, key.modulus) == null) {
+					unregistered.add(key);
+					evict();
+				}
+				return created.join();
+			}
+		}
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+	}
+
+	protected static void evict() {
+		while (unregistered.size() > MAX_UNREGISTERED) {
+			Key oldest = unregistered.poll();
+			if (oldest != null) {
+				calculators.remove(oldest);
+			}
+		}
+	}
+
+	// Drops the calculator for this combination, if any - units already holding it keep working
+	public static boolean remove(int[] coefficients, BigInteger modulus) {
+		Key key = new Key(coefficients.clone(), modulus);
+		unregistered.remove(key);
+		return calculators.remove(key) != null;
+	}
+
+	protected static RecurrenceCalculator build(Key key) {
+		RecurrenceCalculator calculator = RecurrenceCalculator.create(key.coefficients[0], key.coefficients[1], key.coefficients[2]
+				, key.coefficients[3], key.coefficients[4], key.coefficients[5], key.modulus);
+		String dir = System.getProperty(TABLE_DIR_PROPERTY);
+		if (dir == null) {
+			return SignatureUnit.warm(calculator);
+		}
+		Path path = Paths.get(dir, key.fileName());
+		try {
+			RelationTableFile.read(calculator, path);
+			return SignatureUnit.warm(calculator);
+		} catch (IOException | RuntimeException e) {
+			// not there yet or unusable - build the tables and leave them for the next process
+		}
+		SignatureUnit.warm(calculator);
+		try {
+			RelationTableFile.write(calculator, path);
+		} catch (IOException e) {
+			// the directory is only a cache, signing works without it
+		}
+		return calculator;
+	}
+
+	public static int size() {
+		return calculators.size();
+	}
+
+	protected static final class Key {
+		protected final int[] coefficients;
+		protected final BigInteger modulus;
+
+		protected Key(int[] coefficients, BigInteger modulus) {
+			this.coefficients = coefficients;
+			this.modulus = modulus;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return modulus.equals(key.modulus) && Arrays.equals(coefficients, key.coefficients);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * modulus.hashCode() + Arrays.hashCode(coefficients);
+		}
+
+		// A name that differs for every combination of coefficients and modulus
+		protected String fileName() {
+			MessageDigest hash = SignatureUnit.localHasher();
+			hash.update(Arrays.toString(coefficients).getBytes(StandardCharsets.US_ASCII));
+			hash.update(modulus.toByteArray());
+			byte[] digest = hash.digest();
+			StringBuilder name = new StringBuilder("ffsh-");
+			for (int ii = 0; ii < 12; ++ii) {
+				name.append(String.format("%02x", digest[ii]));
+			}
+			return name.append(".tables").toString();
+		}
+	}
+}
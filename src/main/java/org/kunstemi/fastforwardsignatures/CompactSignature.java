@@ -0,0 +1,128 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/*
+ * Versioned fixed size signature format: a marker byte, the parameter set id, the set's fingerprint
+ * (ParameterSet.FINGERPRINT_BYTES), then P1, Q1, P2 and Q2 each as an unsigned big endian field of
+ * ParameterSet.fieldWidth() bytes.  There are no length bytes and no modulus - the id names it - so a
+ * signature for a given set is always exactly length(set) bytes.  The fingerprint catches a set registered
+ * under the same id with other coefficients or modulus on the verifying side.
+ *
+ * The marker is 0x80 | VERSION.  The original FFSHKey encoding starts with -1, -2 or a positive modulus
+ * length, so the two formats can be told apart by their first byte and verifiers accept both.
+ */
+public final class CompactSignature {
+
+	public final static int VERSION = 2;
+	protected final static byte MARKER = (byte) (0x80 | VERSION);
+	protected final static int HEADER_BYTES = 2 + ParameterSet.FINGERPRINT_BYTES;
+
+	private CompactSignature() {
+	}
+
+	public static int length(ParameterSet set) {
+		return HEADER_BYTES + 4 * set.fieldWidth();
+	}
+
+	public static boolean isCompact(byte[] signature) {
+		return signature.length > 0 && signature[0] == MARKER;
+	}
+
+	public static byte[] encode(ParameterSet set, BigInteger p1, BigInteger q1, BigInteger p2, BigInteger q2) {
+		int width = set.fieldWidth();
+		byte[] out = new byte[length(set)];
+		putHeader(set, out);
+		put(p1, out, HEADER_BYTES, width);
+		put(q1, out, HEADER_BYTES + width, width);
+		put(p2, out, HEADER_BYTES + 2 * width, width);
+		put(q2, out, HEADER_BYTES + 3 * width, width);
+		return out;
+	}
+
+	// marker, id and fingerprint of the set
+	protected static void putHeader(ParameterSet set, byte[] out) {
+		out[0] = MARKER;
+		out[1] = (byte) set.getId();
+		System.arraycopy(set.fingerprint, 0, out, 2, ParameterSet.FINGERPRINT_BYTES);
+	}
+
+	public static ParameterSet parameterSet(byte[] signature) {
+		if (!isCompact(signature) || signature.length < HEADER_BYTES) {
+			throw new IllegalArgumentException("Not a version "+VERSION+" compact signature");
+		}
+		ParameterSet set = ParameterSet.forId(signature[1] & 0xFF);
+		if (set == null) {
+			throw new IllegalArgumentException("Unknown parameter set "+(signature[1] & 0xFF));
+		}
+		if (!set.matchesFingerprint(signature, 2)) {
+			throw new IllegalArgumentException("Parameter set "+set.getId()+" is registered with other coefficients or modulus");
+		}
+		return set;
+	}
+
+	// As parameterSet, but null instead of throwing
+	public static ParameterSet findParameterSet(byte[] signature) {
+		if (!isCompact(signature) || signature.length < HEADER_BYTES) {
+			return null;
+		}
+		ParameterSet set = ParameterSet.forId(signature[1] & 0xFF);
+		return set != null && set.matchesFingerprint(signature, 2) ? set : null;
+	}
+
+	// m, P1, Q1, P2, Q2 - the same layout FFSHKey.toArray gives for the original format
+	public static BigInteger[] decode(byte[] signature) {
+		ParameterSet set = parameterSet(signature);
+		if (signature.length != length(set)) {
+			throw new IllegalArgumentException("Signature for parameter set "+set.getId()+" must be "+length(set)+" bytes : "+signature.length);
+		}
+		int width = set.fieldWidth();
+		BigInteger[] ret = new BigInteger[5];
+		ret[0] = set.getModulus();
+		for (int ii = 0; ii < 4; ++ii) {
+			int from = HEADER_BYTES + ii * width;
+			ret[ii + 1] = new BigInteger(1, Arrays.copyOfRange(signature, from, from + width));
+		}
+		return ret;
+	}
+
+	protected static void put(BigInteger value, byte[] out, int pos, int width) {
+		byte[] bi = value.toByteArray();
+		// drop the sign byte toByteArray adds when the top bit is set
+		int skip = bi.length > width ? bi.length - width : 0;
+		for (int ii = 0; ii < skip; ++ii) {
+			if (bi[ii] != 0) {
+				throw new IllegalArgumentException("Value does not fit in "+width+" bytes");
+			}
+		}
+		if (value.signum() < 0) {
+			throw new IllegalArgumentException("Value does not fit in "+width+" bytes");
+		}
+		System.arraycopy(bi, skip, out, pos + width - (bi.length - skip), bi.length - skip);
+	}
+}
@@ -1,14 +1,13 @@
 package org.kunstemi.fastforwardsignatures;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.Key;
+import java.security.MessageDigest;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 
 /*
  * The MIT License
@@ -58,58 +57,163 @@ public class FFSHKey extends X509EncodedKeySpec implements Key , Serializable {
 	}
 	
 	public static byte[] toSingle(BigInteger[] vals) throws IOException {
-		BigInteger p = vals[0];
-		final ByteArrayOutputStream bos = new ByteArrayOutputStream(p.bitLength()/6); 
-		final DataOutputStream dos = new DataOutputStream(bos);
+		byte[] out = new byte[encodedLength(vals[0], vals.length - 1)];
+		encode(vals, out, 0);
+		return out;
+	}
+	
+	public static BigInteger[] toArray(byte[] source) throws IOException {
+		try {
+			return decode(source, 0, source.length);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		}
+	}	
 
+	/*
+	 * The encoding is a modulus tag - -1 and -2 for the default moduli, otherwise the byte length of m 
+	 * followed by m itself - then every value as a fixed width big endian number of the same width as m.  
+	 * The encoders write straight into the caller's array or buffer, so the only allocation is the one 
+	 * toByteArray per value.
+	 */
+	
+	// Width of each value for modulus m, equal to m.toByteArray().length
+	public static int valueWidth(BigInteger m) {
+		return (m.bitLength() >>> 3) + 1;
+	}
+	
+	public static int encodedLength(BigInteger m, int values) {
+		int width = valueWidth(m);
+		return tagLength(m) + values * width;
+	}
+	
+	protected static int tagLength(BigInteger m) {
+		return m.equals(DEFAULT_MODULO_384) || m.equals(DEFAULT_MODULO_256) ? 1 : 1 + valueWidth(m);
+	}
+	
+	// vals[0] is the modulus, the rest must lie in [0, m).  Returns the number of bytes written
+	public static int encode(BigInteger[] vals, byte[] out, int offset) {
 		BigInteger m = vals[0];
-		byte[] ml = m.toByteArray();		
+		int width = valueWidth(m);
+		int pos = offset;
 		if (m.equals(DEFAULT_MODULO_384)) {
-			dos.writeByte(-1);
+			out[pos++] = -1;
 		} else if (m.equals(DEFAULT_MODULO_256)) {
-			dos.writeByte(-2);
+			out[pos++] = -2;
 		} else {
-			 dos.writeByte(ml.length);
-			 dos.write(ml);			 
+			out[pos++] = (byte) width;
+			pos = put(m, out, pos, width);
 		}
-		
-		int vl = vals.length;
-		//dos.writeByte(vl);
-		for (int ii = 1; ii < vl; ++ii) {
-			byte[] bi = m.toByteArray();
-			int diff = bi.length-ml.length;
-			for (;diff>0;--diff) {
-				dos.writeByte(0);
-			}
-			dos.write(bi);
+		for (int ii = 1; ii < vals.length; ++ii) {
+			pos = put(vals[ii], out, pos, width);
 		}
-		dos.flush();
-		return bos.toByteArray();
+		return pos - offset;
 	}
 	
-	public static BigInteger[] toArray(byte[] source) throws IOException {
-		final ByteArrayInputStream bos = new ByteArrayInputStream(source); 
-		final DataInputStream dis = new DataInputStream(bos);
-		//int vl = dis.readByte();
-		BigInteger[] ret = new BigInteger[5]; 
-		int bi = dis.readByte();
+	public static void encode(BigInteger[] vals, ByteBuffer out) {
+		if (out.hasArray()) {
+			int written = encode(vals, out.array(), out.arrayOffset() + out.position());
+			out.position(out.position() + written);
+			return;
+		}
+		BigInteger m = vals[0];
+		int width = valueWidth(m);
+		if (m.equals(DEFAULT_MODULO_384)) {
+			out.put((byte) -1);
+		} else if (m.equals(DEFAULT_MODULO_256)) {
+			out.put((byte) -2);
+		} else {
+			out.put((byte) width);
+			put(m, out, width);
+		}
+		for (int ii = 1; ii < vals.length; ++ii) {
+			put(vals[ii], out, width);
+		}
+	}
+	
+	// Modulus plus the four values that follow it
+	public static BigInteger[] decode(byte[] source, int offset, int length) {
+		return decode(ByteBuffer.wrap(source, offset, length));
+	}
+	
+	public static BigInteger[] decode(ByteBuffer source) {
+		BigInteger[] ret = new BigInteger[5];
+		int bi = source.get();
 		if (bi==-1) {
 			ret[0] = DEFAULT_MODULO_384; 
-		} else 	if (bi==-2) {
+		} else if (bi==-2) {
 			ret[0] = DEFAULT_MODULO_256; 
-		} else  {
+		} else if (bi > 0) {
 			byte[] b = new byte[bi];
-			dis.read(b);
+			source.get(b);
 			ret[0] = new BigInteger(b);
+		} else {
+			throw new IllegalArgumentException("Bad modulus tag "+bi);
+		}
+		int width = valueWidth(ret[0]);
+		if (source.remaining() < 4 * width) {
+			throw new IllegalArgumentException("Need "+(4 * width)+" bytes of values, have "+source.remaining());
 		}
-		
-		byte[] buf = new byte[ret[0].toByteArray().length];
+		// BigInteger copies its input, so one scratch array serves all values
+		byte[] buf = new byte[width];
 		for (int ii = 1; ii < 5; ++ii) {				
-				dis.read(buf);
-				ret[ii] = new BigInteger(buf);
+			source.get(buf);
+			ret[ii] = new BigInteger(buf);
 		}
 		return ret;
-	}	
+	}
+	
+	// Feeds the encoding of (m, p1, q1, p2, q2) straight into digest, without building it in an array first
+	public static void update(MessageDigest digest, BigInteger m, BigInteger p1, BigInteger q1, BigInteger p2, BigInteger q2) {
+		int width = valueWidth(m);
+		if (m.equals(DEFAULT_MODULO_384)) {
+			digest.update((byte) -1);
+		} else if (m.equals(DEFAULT_MODULO_256)) {
+			digest.update((byte) -2);
+		} else {
+			digest.update((byte) width);
+			put(m, digest, width);
+		}
+		put(p1, digest, width);
+		put(q1, digest, width);
+		put(p2, digest, width);
+		put(q2, digest, width);
+	}
+	
+	protected static void put(BigInteger value, MessageDigest digest, int width) {
+		byte[] bi = value.toByteArray();
+		int pad = width - bi.length;
+		if (pad < 0 || value.signum() < 0) {
+			throw new IllegalArgumentException("Value does not fit in "+width+" bytes");
+		}
+		for (; pad > 0; --pad) {
+			digest.update((byte) 0);
+		}
+		digest.update(bi);
+	}
+	
+	protected static int put(BigInteger value, byte[] out, int pos, int width) {
+		byte[] bi = value.toByteArray();
+		int pad = width - bi.length;
+		if (pad < 0 || value.signum() < 0) {
+			throw new IllegalArgumentException("Value does not fit in "+width+" bytes");
+		}
+		Arrays.fill(out, pos, pos + pad, (byte) 0);
+		System.arraycopy(bi, 0, out, pos + pad, bi.length);
+		return pos + width;
+	}
+	
+	protected static void put(BigInteger value, ByteBuffer out, int width) {
+		byte[] bi = value.toByteArray();
+		int pad = width - bi.length;
+		if (pad < 0 || value.signum() < 0) {
+			throw new IllegalArgumentException("Value does not fit in "+width+" bytes");
+		}
+		for (; pad > 0; --pad) {
+			out.put((byte) 0);
+		}
+		out.put(bi);
+	}
 
 	@Override
 	public String getAlgorithm() {
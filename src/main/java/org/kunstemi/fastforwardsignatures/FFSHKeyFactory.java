@@ -0,0 +1,109 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactorySpi;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.EncodedKeySpec;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+/*
+ * Key factory behind FFSHProvider.  Keys travel in their own encoding (getEncoded()) - a public key is the
+ * 32 byte end state hash, a private key the FFSHKey encoding of the modulus and start states - wrapped in
+ * either an X509EncodedKeySpec or a PKCS8EncodedKeySpec.
+ */
+public class FFSHKeyFactory extends KeyFactorySpi {
+
+	@Override
+	protected PublicKey engineGeneratePublic(KeySpec keySpec) throws InvalidKeySpecException {
+		if (keySpec instanceof FFSHPublicKey) {
+			return (FFSHPublicKey) keySpec;
+		}
+		try {
+			return new FFSHPublicKey(encoded(keySpec));
+		} catch (IOException e) {
+			throw new InvalidKeySpecException(e);
+		}
+	}
+
+	@Override
+	protected PrivateKey engineGeneratePrivate(KeySpec keySpec) throws InvalidKeySpecException {
+		if (keySpec instanceof FFSHPrivateKey) {
+			return (FFSHPrivateKey) keySpec;
+		}
+		try {
+			return new FFSHPrivateKey(FFSHKey.toArray(encoded(keySpec)));
+		} catch (IOException | RuntimeException e) {
+			throw new InvalidKeySpecException(e);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected <T extends KeySpec> T engineGetKeySpec(Key key, Class<T> keySpec) throws InvalidKeySpecException {
+		if (!FFSHProvider.ALGORITHM.equals(key.getAlgorithm())) {
+			throw new InvalidKeySpecException("Not an "+FFSHProvider.ALGORITHM+" key");
+		}
+		if (keySpec.isAssignableFrom(X509EncodedKeySpec.class)) {
+			return (T) new X509EncodedKeySpec(key.getEncoded());
+		}
+		if (keySpec.isAssignableFrom(PKCS8EncodedKeySpec.class)) {
+			return (T) new PKCS8EncodedKeySpec(key.getEncoded());
+		}
+		throw new InvalidKeySpecException("Unsupported key spec "+keySpec.getName());
+	}
+
+	@Override
+	protected Key engineTranslateKey(Key key) throws InvalidKeyException {
+		if (key instanceof FFSHPublicKey || key instanceof FFSHPrivateKey) {
+			return key;
+		}
+		if (!FFSHProvider.ALGORITHM.equals(key.getAlgorithm())) {
+			throw new InvalidKeyException("Not an "+FFSHProvider.ALGORITHM+" key");
+		}
+		try {
+			if (key instanceof PrivateKey) {
+				return engineGeneratePrivate(new PKCS8EncodedKeySpec(key.getEncoded()));
+			}
+			return engineGeneratePublic(new X509EncodedKeySpec(key.getEncoded()));
+		} catch (InvalidKeySpecException e) {
+			throw new InvalidKeyException(e);
+		}
+	}
+
+	protected static byte[] encoded(KeySpec keySpec) throws InvalidKeySpecException {
+		if (keySpec instanceof EncodedKeySpec) {
+			return ((EncodedKeySpec) keySpec).getEncoded();
+		}
+		throw new InvalidKeySpecException("Unsupported key spec "+keySpec.getClass().getName());
+	}
+}
@@ -0,0 +1,81 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGeneratorSpi;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+/*
+ * Key pair generator behind FFSHProvider.  Key sizes 256 and 384 pick the default moduli (384 if never
+ * initialized); a ParameterSet picks its modulus.  Without an explicit SecureRandom the start states come
+ * from the calling thread's LocalRandom.
+ */
+public class FFSHKeyPairGenerator extends KeyPairGeneratorSpi {
+
+	protected ParameterSet parameters = ParameterSet.DEFAULT_384;
+	protected SecureRandom random = null;
+
+	@Override
+	public void initialize(int keysize, SecureRandom random) {
+		if (keysize == 256) {
+			parameters = ParameterSet.DEFAULT_256;
+		} else if (keysize == 384) {
+			parameters = ParameterSet.DEFAULT_384;
+		} else {
+			throw new InvalidParameterException("Key size must be 256 or 384 : "+keysize);
+		}
+		this.random = random;
+	}
+
+	@Override
+	public void initialize(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+		if (!(params instanceof ParameterSet)) {
+			throw new InvalidAlgorithmParameterException("Expected a ParameterSet");
+		}
+		ParameterSet set = (ParameterSet) params;
+		if (!Arrays.equals(set.coefficients, ParameterSet.STANDARD_COEFFICIENTS)) {
+			throw new InvalidAlgorithmParameterException("Keys carry no coefficients, only the standard ones are supported");
+		}
+		if (!set.equals(ParameterSet.forId(set.getId()))) {
+			throw new InvalidAlgorithmParameterException("Parameter set "+set.getId()+" is not registered");
+		}
+		this.parameters = set;
+		this.random = random;
+	}
+
+	@Override
+	public KeyPair generateKeyPair() {
+		SignatureUnit unit = SignatureUnit.shared(parameters);
+		if (random == null) {
+			return unit.createRandomKeyPair();
+		}
+		return SignatureUnit.createRandomKeyPair(unit.calculator, unit, random, false);
+	}
+}
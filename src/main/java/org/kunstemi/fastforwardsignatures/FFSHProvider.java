@@ -0,0 +1,52 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.Provider;
+
+/*
+ * JCA provider for the fast forward hash signatures, so frameworks can use them through the standard
+ * Signature.getInstance("FFSH1"), KeyPairGenerator.getInstance("FFSH1") and KeyFactory.getInstance("FFSH1").
+ *
+ * Either install it with Security.addProvider(new FFSHProvider()) or pass an instance to getInstance.
+ * Every engine it hands out works through the process wide SignatureUnit.shared units and their registry
+ * calculators, so an engine holds only its own digest and key and getInstance per request is cheap.
+ */
+public final class FFSHProvider extends Provider {
+
+	private static final long serialVersionUID = 4170273628305367817L;
+
+	public final static String NAME = "FFSH";
+	public final static String ALGORITHM = "FFSH1";
+
+	@SuppressWarnings("deprecation")
+	public FFSHProvider() {
+		super(NAME, 1.0, "Fast forward hash one-time signatures");
+		put("Signature."+ALGORITHM, FFSHSignatureSpi.class.getName());
+		put("Alg.Alias.Signature.FFHS", ALGORITHM);
+		put("KeyPairGenerator."+ALGORITHM, FFSHKeyPairGenerator.class.getName());
+		put("KeyFactory."+ALGORITHM, FFSHKeyFactory.class.getName());
+	}
+}
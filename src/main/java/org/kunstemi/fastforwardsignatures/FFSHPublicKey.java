@@ -26,18 +26,28 @@ THE SOFTWARE.
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.security.MessageDigest;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 
 public class FFSHPublicKey extends X509EncodedKeySpec implements PublicKey {
 	private static final long serialVersionUID = -6665082068277954818L;
+	
+	// own copy for matches(), getEncoded() hands out a new clone every call
+	protected final byte[] finalStateHash;
 
 	public FFSHPublicKey(BigInteger finalStateHash) throws IOException {
-		super(finalStateHash.toByteArray());
+		this(finalStateHash.toByteArray());
 	}
 
 	public FFSHPublicKey(byte[] finalStateHash) throws IOException {
 		super(finalStateHash);
+		this.finalStateHash = finalStateHash.clone();
+	}
+	
+	// Constant time comparison with a computed end state hash
+	public boolean matches(byte[] hash) {
+		return MessageDigest.isEqual(finalStateHash, hash);
 	}
 
 	@Override
@@ -0,0 +1,168 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.SignatureSpi;
+import java.security.spec.AlgorithmParameterSpec;
+
+/*
+ * Signature engine behind FFSHProvider.  The engine only owns the message digest and the key - the chains
+ * are computed by the shared SignatureUnit of a registered ParameterSet.
+ *
+ * Public keys do not carry their modulus, so when verifying the parameter set comes from the signature.  The
+ * signature is untrusted: only registered sets are accepted (anything else just fails to verify, it never
+ * builds a calculator), and a ParameterSet given to setParameter pins verification to that one set.
+ *
+ * Accepts the "compact" parameter (SignatureUnit.PARAM_COMPACT) to sign in the CompactSignature format.
+ */
+public class FFSHSignatureSpi extends SignatureSpi {
+
+	protected final MessageDigest digest = SignatureUnit.newHasher();
+	protected FFSHPrivateKey privateKey;
+	protected FFSHPublicKey publicKey;
+	protected SignatureUnit unit;
+	protected boolean compact = false;
+	// when set, the only parameter set signatures are verified under
+	protected ParameterSet parameters = null;
+
+	@Override
+	protected void engineInitVerify(PublicKey key) throws InvalidKeyException {
+		if (!(key instanceof FFSHPublicKey)) {
+			throw new InvalidKeyException("Not an "+FFSHProvider.ALGORITHM+" public key");
+		}
+		digest.reset();
+		publicKey = (FFSHPublicKey) key;
+		privateKey = null;
+	}
+
+	@Override
+	protected void engineInitSign(PrivateKey key) throws InvalidKeyException {
+		if (!(key instanceof FFSHPrivateKey) || ((FFSHPrivateKey) key).getVals()==null) {
+			throw new InvalidKeyException("Not an "+FFSHProvider.ALGORITHM+" private key");
+		}
+		BigInteger m = ((FFSHPrivateKey) key).getVals()[0];
+		ParameterSet set = ParameterSet.find(ParameterSet.STANDARD_COEFFICIENTS, m);
+		if (set == null || (parameters != null && !parameters.equals(set))) {
+			throw new InvalidKeyException("The key's modulus is not a registered parameter set");
+		}
+		digest.reset();
+		privateKey = (FFSHPrivateKey) key;
+		publicKey = null;
+		unit = SignatureUnit.shared(set);
+	}
+
+	@Override
+	protected void engineUpdate(byte b) {
+		digest.update(b);
+	}
+
+	@Override
+	protected void engineUpdate(byte[] b, int off, int len) {
+		digest.update(b, off, len);
+	}
+
+	@Override
+	protected void engineUpdate(ByteBuffer input) {
+		digest.update(input);
+	}
+
+	@Override
+	protected byte[] engineSign() throws SignatureException {
+		if (privateKey==null) {
+			throw new SignatureException("Not initialized for signing");
+		}
+		return unit.signDigest(privateKey, digest.digest(), compact);
+	}
+
+	@Override
+	protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+		if (publicKey==null) {
+			throw new SignatureException("Not initialized for verification");
+		}
+		byte[] dataSignature = digest.digest();
+		try {
+			ParameterSet set = parameterSet(sigBytes);
+			if (set == null || (parameters != null && !parameters.equals(set))) {
+				return false;
+			}
+			// the digest is free again once digested - reuse it for the end states
+			return SignatureUnit.shared(set).verifyDigest(publicKey, dataSignature, sigBytes, digest);
+		} catch (IOException | RuntimeException e) {
+			// malformed signature bytes
+			throw new SignatureException(e);
+		}
+	}
+
+	// The registered set a signature claims, or null if it names none
+	protected static ParameterSet parameterSet(byte[] sigBytes) throws IOException {
+		if (sigBytes == null || sigBytes.length == 0) {
+			return null;
+		}
+		if (CompactSignature.isCompact(sigBytes)) {
+			return CompactSignature.findParameterSet(sigBytes);
+		}
+		return ParameterSet.find(ParameterSet.STANDARD_COEFFICIENTS, FFSHKey.toArray(sigBytes)[0]);
+	}
+
+	@Override
+	protected void engineSetParameter(AlgorithmParameterSpec params) throws InvalidAlgorithmParameterException {
+		if (!(params instanceof ParameterSet)) {
+			throw new InvalidAlgorithmParameterException("Expected a ParameterSet");
+		}
+		ParameterSet set = (ParameterSet) params;
+		if (!set.equals(ParameterSet.forId(set.getId()))) {
+			throw new InvalidAlgorithmParameterException("Parameter set "+set.getId()+" is not registered");
+		}
+		parameters = set;
+	}
+
+	@Override
+	@Deprecated
+	protected void engineSetParameter(String param, Object value) throws InvalidParameterException {
+		if (!SignatureUnit.PARAM_COMPACT.equals(param) || !(value instanceof Boolean)) {
+			throw new InvalidParameterException("Only "+SignatureUnit.PARAM_COMPACT+" (a Boolean) is supported");
+		}
+		compact = (Boolean) value;
+	}
+
+	@Override
+	@Deprecated
+	protected Object engineGetParameter(String param) throws InvalidParameterException {
+		if (!SignatureUnit.PARAM_COMPACT.equals(param)) {
+			throw new InvalidParameterException("Unknown parameter "+param);
+		}
+		return compact;
+	}
+}
@@ -0,0 +1,176 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Keeps a stock of ready one-time key pairs so key generation is off the signing path.
+ *
+ * Background threads call createRandomKeyPair on the given unit and put the results in a bounded queue,
+ * sleeping (blocked on the queue) whenever it holds highWaterMark pairs.  take() hands out a pooled pair
+ * without blocking while there is stock and only generates on the calling thread when the pool has run
+ * dry - counted as a miss, so the pool can be sized from getMisses() and getRefillRate() under burst load.
+ *
+ * Every pair is handed out once and only once, as required for one-time keys.
+ *
+ * A background thread that fails to generate a pair records the failure (getFailures, getLastFailure), backs
+ * off briefly and carries on, so the pool never silently stops refilling.
+ */
+public class KeyPairPool implements AutoCloseable {
+
+	protected final SignatureUnit unit;
+	protected final BlockingQueue<KeyPair> pool;
+	protected final int highWaterMark;
+	protected final Thread[] workers;
+
+	protected final LongAdder generated = new LongAdder();
+	protected final LongAdder generateNanos = new LongAdder();
+	protected final LongAdder taken = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+	protected final LongAdder failures = new LongAdder();
+	protected volatile RuntimeException lastFailure = null;
+
+	// pause after a failed generation, so a persistent fault does not spin the workers
+	protected final static long FAILURE_BACKOFF_MILLIS = 100;
+
+	protected volatile boolean running = true;
+
+	public KeyPairPool(SignatureUnit unit, int highWaterMark) {
+		this(unit, highWaterMark, Math.max(1, Runtime.getRuntime().availableProcessors()/2));
+	}
+
+	public KeyPairPool(SignatureUnit unit, int highWaterMark, int threads) {
+		if (highWaterMark < 1 || threads < 1) {
+			throw new IllegalArgumentException("Pool needs a positive high water mark and at least one thread");
+		}
+		this.unit = unit;
+		this.highWaterMark = highWaterMark;
+		this.pool = new ArrayBlockingQueue<>(highWaterMark);
+		this.workers = new Thread[threads];
+		for (int ii = 0; ii < threads; ++ii) {
+			workers[ii] = new Thread(this::refill, "KeyPairPool-"+ii);
+			workers[ii].setDaemon(true);
+			workers[ii].start();
+		}
+	}
+
+	protected void refill() {
+		try {
+			while (running) {
+				long start = System.nanoTime();
+				KeyPair keyPair;
+				try {
+					keyPair = unit.createRandomKeyPair();
+				} catch (RuntimeException e) {
+					failures.increment();
+					lastFailure = e;
+					Thread.sleep(FAILURE_BACKOFF_MILLIS);
+					continue;
+				}
+				generateNanos.add(System.nanoTime() - start);
+				generated.increment();
+				pool.put(keyPair);
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} finally {
+			// a pair finished after close() emptied the queue must not linger either
+			if (!running) {
+				pool.clear();
+			}
+		}
+	}
+
+	// A fresh key pair - from stock if there is any, otherwise generated on the calling thread
+	public KeyPair take() {
+		KeyPair keyPair = pool.poll();
+		if (keyPair==null) {
+			misses.increment();
+			keyPair = unit.createRandomKeyPair();
+		}
+		taken.increment();
+		return keyPair;
+	}
+
+	// A pooled key pair, or null if the pool is currently empty
+	public KeyPair poll() {
+		KeyPair keyPair = pool.poll();
+		if (keyPair!=null) {
+			taken.increment();
+		}
+		return keyPair;
+	}
+
+	public int getDepth() {
+		return pool.size();
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public long getGenerated() {
+		return generated.sum();
+	}
+
+	public long getTaken() {
+		return taken.sum();
+	}
+
+	// takes that found the pool empty
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	// background generations that threw
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	// the most recent background failure, null if there has been none
+	public RuntimeException getLastFailure() {
+		return lastFailure;
+	}
+
+	// key pairs per second the background threads produce while refilling, all threads together
+	public double getRefillRate() {
+		long nanos = generateNanos.sum();
+		return nanos==0 ? 0 : generated.sum() * 1e9 * workers.length / nanos;
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+		// pooled private keys are never handed out after close
+		pool.clear();
+	}
+}
@@ -0,0 +1,176 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/*
+ * A 32 byte master seed from which any number of one-time key pairs can be derived deterministically.
+ *
+ * The four start states of key pair i are expanded from the seed with HMAC-SHA256 used as a counter mode 
+ * KDF over (i, value, block), giving 256 bits more than the modulus for each value before reduction - 
+ * the same bias margin as createRandomKeyPair.  Instead of holding millions of expanded private keys, an 
+ * inventory only needs the seed and (getId(), index) per key - see Reference - and keys are expanded as
+ * they are used.  Merkle leaves can be recomputed the same way via leafSource().
+ *
+ * The seed is as secret as every key derived from it.
+ */
+public class KeySeed {
+
+	public final static int SEED_BYTES = 32;
+	protected final static byte[] ID_LABEL = "FFSH seed id".getBytes(StandardCharsets.US_ASCII);
+	protected final static byte[] KEY_LABEL = "FFSH key".getBytes(StandardCharsets.US_ASCII);
+
+	protected final byte[] seed;
+	protected final long id;
+
+	protected final static ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+		try {
+			return Mac.getInstance("HmacSHA256");
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	});
+
+	public KeySeed(byte[] seed) {
+		if (seed.length != SEED_BYTES) {
+			throw new IllegalArgumentException("Seed must be "+SEED_BYTES+" bytes : "+seed.length);
+		}
+		this.seed = seed.clone();
+		// a public handle for the seed that does not reveal it
+		MessageDigest hash = SignatureUnit.localHasher();
+		hash.update(ID_LABEL);
+		this.id = ByteBuffer.wrap(hash.digest(this.seed)).getLong();
+	}
+
+	public static KeySeed generate(SecureRandom random) {
+		byte[] seed = new byte[SEED_BYTES];
+		random.nextBytes(seed);
+		return new KeySeed(seed);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public byte[] getSeed() {
+		return seed.clone();
+	}
+
+	// p1, q1, p2, q2 of key pair index, each in [0, m)
+	public BigInteger[] startStates(BigInteger m, long index) {
+		int bytes = (m.bitLength() + 256 + 7) / 8;
+		BigInteger[] ret = new BigInteger[4];
+		try {
+			Mac mac = macs.get();
+			mac.init(new SecretKeySpec(seed, "HmacSHA256"));
+			byte[] out = new byte[((bytes + 31) / 32) * 32];
+			ByteBuffer info = ByteBuffer.allocate(KEY_LABEL.length + 8 + 2);
+			for (int value = 0; value < 4; ++value) {
+				for (int block = 0; block * 32 < bytes; ++block) {
+					info.clear();
+					info.put(KEY_LABEL).putLong(index).put((byte) value).put((byte) block);
+					mac.update(info.array());
+					mac.doFinal(out, block * 32);
+				}
+				ret[value] = new BigInteger(1, Arrays.copyOf(out, bytes)).mod(m);
+			}
+			Arrays.fill(out, (byte) 0);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+		return ret;
+	}
+
+	public FFSHPrivateKey privateKey(BigInteger m, long index) {
+		BigInteger[] states = startStates(m, index);
+		try {
+			return new FFSHPrivateKey(m, states[0], states[1], states[2], states[3]);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public KeyPair keyPair(SignatureUnit unit, long index) {
+		BigInteger[] states = startStates(unit.modulo(), index);
+		return unit.createKeyPair(states[0], states[1], states[2], states[3]);
+	}
+
+	// Leaves derived on demand - a Merkle tree of any height needs no per leaf storage
+	public MerkleLeafSource leafSource(SignatureUnit unit) {
+		return index -> keyPair(unit, index);
+	}
+
+	public Reference reference(long index) {
+		return new Reference(id, index);
+	}
+
+	// The stored form of a derived private key: which seed, and which key of that seed
+	public static final class Reference {
+		public final static int BYTES = 16;
+
+		protected final long seedId;
+		protected final long index;
+
+		public Reference(long seedId, long index) {
+			this.seedId = seedId;
+			this.index = index;
+		}
+
+		public static Reference fromBytes(byte[] bytes) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			return new Reference(buffer.getLong(), buffer.getLong());
+		}
+
+		public byte[] toBytes() {
+			return ByteBuffer.allocate(BYTES).putLong(seedId).putLong(index).array();
+		}
+
+		public long getSeedId() {
+			return seedId;
+		}
+
+		public long getIndex() {
+			return index;
+		}
+
+		public FFSHPrivateKey expand(KeySeed seed, BigInteger m) {
+			if (seed.getId() != seedId) {
+				throw new IllegalArgumentException("Key belongs to seed "+seedId+", not "+seed.getId());
+			}
+			return seed.privateKey(m, index);
+		}
+	}
+}
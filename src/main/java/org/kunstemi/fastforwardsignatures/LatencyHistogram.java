@@ -0,0 +1,110 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+/*
+ * Log-linear latency histogram in the style of HdrHistogram: 128 linear sub-buckets per power of two, so any
+ * recorded value is reported to within 1% using a fixed 58 KB of counts and no allocation per record.
+ *
+ * Not thread safe - give every recording thread its own and add() them together afterwards.
+ */
+public class LatencyHistogram {
+
+	protected final static int SUB_BITS = 7;
+	protected final static int SUB_BUCKETS = 1 << SUB_BITS;
+
+	protected final long[] counts = new long[SUB_BUCKETS * (64 - SUB_BITS + 1)];
+	protected long total = 0;
+	protected long max = 0;
+	protected double sum = 0;
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		++counts[index(value)];
+		++total;
+		sum += value;
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	public void add(LatencyHistogram other) {
+		for (int ii = 0; ii < counts.length; ++ii) {
+			counts[ii] += other.counts[ii];
+		}
+		total += other.total;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return total;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return total == 0 ? 0 : sum / total;
+	}
+
+	// The highest value equivalent to the one at the given percentile (0-100), 0 if nothing was recorded
+	public long percentile(double percentile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0;
+		for (int ii = 0; ii < counts.length; ++ii) {
+			seen += counts[ii];
+			if (seen >= rank) {
+				return Math.min(highestEquivalent(ii), max);
+			}
+		}
+		return max;
+	}
+
+	protected static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+		return SUB_BUCKETS * (exponent - SUB_BITS + 1) + sub;
+	}
+
+	protected static long highestEquivalent(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BITS);
+		return ((SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+	}
+}
@@ -0,0 +1,369 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Load generator for a sustained mix of key generation, signing and verification - the end to end flow of 
+ * SimpleTest, run from many threads for a fixed time.
+ *
+ *   java -cp ... org.kunstemi.fastforwardsignatures.LoadTest --threads 8 --rate 4000 --mix 1:4:16 
+ *        --duration 60 --warmup 10 --modulus 256 --out run.csv
+ *
+ * With a --rate (operations per second over all threads) the test is open loop: every thread has a fixed 
+ * schedule of intended start times and latency is measured from the intended start, not from when the 
+ * operation actually got going.  A stall therefore shows up in the latency of every operation queued behind 
+ * it, which is the coordinated omission correction - a closed loop measurement would hide those.  Operations
+ * scheduled before the end of the run that never got started are recorded too, as having waited until the
+ * end (a lower bound on what they would have seen), and counted in their own unstarted column; ops/s counts
+ * completed operations only.  Service time (actual start to end) is reported alongside.  Without --rate each
+ * thread runs flat out (closed loop), and both figures are the same.
+ *
+ * Each thread picks operations at random in the --mix ratio keygen:sign:verify.  All threads go through one
+ * shared SignatureUnit and its thread safe calls (createRandomKeyPair, signDigest, verifyDigest), hashing the
+ * message themselves, so the tables are built once per run.  Signing reuses a few pre-generated key pairs,
+ * which a real one-time deployment must never do, but costs the same.  Percentiles are in microseconds;
+ * --out writes them as CSV.
+ */
+public class LoadTest {
+
+	protected final static String[] OPERATIONS = {"keygen", "sign", "verify"};
+	protected final static double[] PERCENTILES = {50, 90, 99, 99.9, 100};
+	protected final static int KEYS_PER_THREAD = 16;
+
+	protected int threads = Runtime.getRuntime().availableProcessors();
+	protected double rate = 0;
+	protected int[] mix = {1, 4, 16};
+	protected double duration = 30;
+	protected double warmup = 5;
+	protected BigInteger modulus = FFSHKey.DEFAULT_MODULO_256;
+	protected String out = null;
+
+	public static void main(String[] args) throws Exception {
+		LoadTest test = new LoadTest();
+		for (int ii = 0; ii < args.length; ii += 2) {
+			if (ii + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for "+args[ii]);
+			}
+			String value = args[ii + 1];
+			switch (args[ii]) {
+			case "--threads": test.threads = Integer.parseInt(value); break;
+			case "--rate": test.rate = Double.parseDouble(value); break;
+			case "--mix": test.mix = parseMix(value); break;
+			case "--duration": test.duration = Double.parseDouble(value); break;
+			case "--warmup": test.warmup = Double.parseDouble(value); break;
+			case "--modulus": test.modulus = parseModulus(value); break;
+			case "--out": test.out = value; break;
+			default: throw new IllegalArgumentException("Unknown option "+args[ii]);
+			}
+		}
+		test.run(System.out);
+	}
+
+	protected static BigInteger parseModulus(String value) {
+		switch (value) {
+		case "256": return FFSHKey.DEFAULT_MODULO_256;
+		case "384": return FFSHKey.DEFAULT_MODULO_384;
+		default: throw new IllegalArgumentException("Modulus is 256 or 384 : "+value);
+		}
+	}
+
+	protected static int[] parseMix(String value) {
+		String[] parts = value.split(":");
+		if (parts.length != OPERATIONS.length) {
+			throw new IllegalArgumentException("Mix is keygen:sign:verify : "+value);
+		}
+		int[] ret = new int[parts.length];
+		for (int ii = 0; ii < parts.length; ++ii) {
+			ret[ii] = Integer.parseInt(parts[ii]);
+		}
+		return ret;
+	}
+
+	public Result run(PrintStream report) throws Exception {
+		SignatureUnit shared = new SignatureUnit(modulus);
+		// the warmup runs the same schedule but its results are thrown away
+		if (warmup > 0) {
+			execute(shared, warmup);
+		}
+		Result result = execute(shared, duration);
+		result.print(report);
+		if (out != null) {
+			result.export(out);
+		}
+		return result;
+	}
+
+	protected Result execute(SignatureUnit shared, double seconds) throws Exception {
+		List<Worker> workers = new ArrayList<>();
+		CountDownLatch ready = new CountDownLatch(threads);
+		CountDownLatch go = new CountDownLatch(1);
+		long runNanos = (long) (seconds * 1e9);
+		// each thread takes every threads-th slot of the overall schedule
+		long interval = rate > 0 ? (long) (1e9 * threads / rate) : 0;
+		for (int ii = 0; ii < threads; ++ii) {
+			Worker worker = new Worker(shared, ii, interval, runNanos, ready, go);
+			workers.add(worker);
+			worker.start();
+		}
+		ready.await();
+		long start = System.nanoTime();
+		for (Worker worker : workers) {
+			worker.start = start + (interval * worker.number) / threads;
+		}
+		go.countDown();
+		for (Worker worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		Result result = new Result(elapsed);
+		for (Worker worker : workers) {
+			if (worker.failure != null) {
+				throw new RuntimeException("Load test thread failed", worker.failure);
+			}
+			result.add(worker);
+		}
+		return result;
+	}
+
+	protected class Worker extends Thread {
+		protected final SignatureUnit unit;
+		protected final int number;
+		protected final long interval;
+		protected final long runNanos;
+		protected final CountDownLatch ready;
+		protected final CountDownLatch go;
+		protected volatile long start;
+		protected final LatencyHistogram[] response = new LatencyHistogram[OPERATIONS.length];
+		protected final LatencyHistogram[] service = new LatencyHistogram[OPERATIONS.length];
+		protected final long[] unstarted = new long[OPERATIONS.length];
+		protected long errors = 0;
+		protected Throwable failure = null;
+
+		protected Worker(SignatureUnit unit, int number, long interval, long runNanos, CountDownLatch ready, CountDownLatch go) {
+			super("load-"+number);
+			this.unit = unit;
+			this.number = number;
+			this.interval = interval;
+			this.runNanos = runNanos;
+			this.ready = ready;
+			this.go = go;
+			for (int ii = 0; ii < OPERATIONS.length; ++ii) {
+				response[ii] = new LatencyHistogram();
+				service[ii] = new LatencyHistogram();
+			}
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				Random random = new Random(number);
+				MessageDigest hasher = SignatureUnit.newHasher();
+				byte[] message = new byte[256];
+				KeyPair[] keys = new KeyPair[KEYS_PER_THREAD];
+				byte[][] signatures = new byte[KEYS_PER_THREAD][];
+				for (int ii = 0; ii < KEYS_PER_THREAD; ++ii) {
+					keys[ii] = unit.createRandomKeyPair();
+					signatures[ii] = unit.signDigest((FFSHPrivateKey) keys[ii].getPrivate(), hasher.digest(message));
+				}
+
+				ready.countDown();
+				go.await();
+				long end = start + runNanos;
+				long intended = start;
+				for (long ii = 0; ; ++ii) {
+					if (interval > 0) {
+						intended = start + ii * interval;
+						if (intended >= end) {
+							break;
+						}
+						long wait;
+						while ((wait = intended - System.nanoTime()) > 0) {
+							LockSupport.parkNanos(wait);
+						}
+					}
+					long begin = System.nanoTime();
+					if (begin >= end) {
+						// due in time but never started - with the open loop these are the slowest samples of all
+						for (long slot = intended; interval > 0 && slot < end; slot += interval) {
+							int operation = pick(random);
+							response[operation].record(end - slot);
+							++unstarted[operation];
+						}
+						break;
+					}
+					if (interval == 0) {
+						intended = begin;
+					}
+
+					int operation = pick(random);
+					int key = random.nextInt(KEYS_PER_THREAD);
+					if (operation == 0) {
+						unit.createRandomKeyPair();
+					} else if (operation == 1) {
+						unit.signDigest((FFSHPrivateKey) keys[key].getPrivate(), hasher.digest(message));
+					} else {
+						byte[] digest = hasher.digest(message);
+						if (!unit.verifyDigest((FFSHPublicKey) keys[key].getPublic(), digest, signatures[key], hasher)) {
+							++errors;
+						}
+					}
+					long done = System.nanoTime();
+					response[operation].record(done - intended);
+					service[operation].record(done - begin);
+				}
+			} catch (Throwable e) {
+				failure = e;
+				ready.countDown();
+			}
+		}
+
+		// an operation in the --mix ratio
+		protected int pick(Random random) {
+			int pick = random.nextInt(mix[0] + mix[1] + mix[2]);
+			return pick < mix[0] ? 0 : pick < mix[0] + mix[1] ? 1 : 2;
+		}
+	}
+
+	public class Result {
+		protected final long elapsedNanos;
+		protected final LatencyHistogram[] response = new LatencyHistogram[OPERATIONS.length];
+		protected final LatencyHistogram[] service = new LatencyHistogram[OPERATIONS.length];
+		protected final long[] unstarted = new long[OPERATIONS.length];
+		protected long errors = 0;
+
+		protected Result(long elapsedNanos) {
+			this.elapsedNanos = elapsedNanos;
+			for (int ii = 0; ii < OPERATIONS.length; ++ii) {
+				response[ii] = new LatencyHistogram();
+				service[ii] = new LatencyHistogram();
+			}
+		}
+
+		protected void add(Worker worker) {
+			for (int ii = 0; ii < OPERATIONS.length; ++ii) {
+				response[ii].add(worker.response[ii]);
+				service[ii].add(worker.service[ii]);
+				unstarted[ii] += worker.unstarted[ii];
+			}
+			errors += worker.errors;
+		}
+
+		// completed operations per second - unstarted ones are only in the response figures
+		public double throughput(int operation) {
+			return service[operation].getCount() * 1e9 / elapsedNanos;
+		}
+
+		public LatencyHistogram getResponse(int operation) {
+			return response[operation];
+		}
+
+		public LatencyHistogram getService(int operation) {
+			return service[operation];
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		// scheduled operations the run ended before starting, included in the response figures
+		public long getUnstarted(int operation) {
+			return unstarted[operation];
+		}
+
+		public void print(PrintStream report) {
+			report.printf(Locale.ROOT, "%d threads, %s, %.1f s, modulus %d bits, mix %d:%d:%d, %d verify failures%n"
+					, threads, rate > 0 ? String.format(Locale.ROOT, "open loop at %.0f ops/s", rate) : "closed loop"
+					, elapsedNanos / 1e9, modulus.bitLength(), mix[0], mix[1], mix[2], errors);
+			report.printf(Locale.ROOT, "%-8s %-8s %10s %10s %10s", "op", "latency", "count", "ops/s", "unstarted");
+			for (double percentile : PERCENTILES) {
+				report.printf(Locale.ROOT, " %10s", percentile == 100 ? "max us" : "p"+format(percentile)+" us");
+			}
+			report.println();
+			for (String[] row : rows()) {
+				report.printf(Locale.ROOT, "%-8s %-8s", row[0], row[1]);
+				for (int ii = 2; ii < row.length; ++ii) {
+					report.printf(Locale.ROOT, " %10s", row[ii]);
+				}
+				report.println();
+			}
+		}
+
+		public void export(String file) throws IOException {
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(file)))) {
+				StringBuilder header = new StringBuilder("operation,latency,count,ops_per_second,unstarted");
+				for (double percentile : PERCENTILES) {
+					header.append(",p").append(format(percentile)).append("_us");
+				}
+				writer.println(header.append(",threads,rate,modulus_bits"));
+				for (String[] row : rows()) {
+					writer.println(String.join(",", row)+","+threads+","+format(rate)+","+modulus.bitLength());
+				}
+			}
+		}
+
+		protected List<String[]> rows() {
+			List<String[]> rows = new ArrayList<>();
+			for (int ii = 0; ii < OPERATIONS.length; ++ii) {
+				rows.add(row(OPERATIONS[ii], "response", response[ii], throughput(ii), unstarted[ii]));
+				rows.add(row(OPERATIONS[ii], "service", service[ii], throughput(ii), unstarted[ii]));
+			}
+			return rows;
+		}
+
+		protected String[] row(String operation, String latency, LatencyHistogram histogram, double throughput, long unstarted) {
+			String[] row = new String[5 + PERCENTILES.length];
+			row[0] = operation;
+			row[1] = latency;
+			row[2] = Long.toString(histogram.getCount());
+			row[3] = String.format(Locale.ROOT, "%.1f", throughput);
+			row[4] = Long.toString(unstarted);
+			for (int ii = 0; ii < PERCENTILES.length; ++ii) {
+				row[5 + ii] = String.format(Locale.ROOT, "%.1f", histogram.percentile(PERCENTILES[ii]) / 1e3);
+			}
+			return row;
+		}
+	}
+
+	protected static String format(double value) {
+		return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+	}
+}
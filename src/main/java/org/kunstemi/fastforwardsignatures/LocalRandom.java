@@ -0,0 +1,104 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/*
+ * One deterministic random bit generator per thread, so key generation on many threads draws its start
+ * states without contending for a single shared SecureRandom.
+ *
+ * Seeding: when a thread first asks for its generator, SEED_BYTES are drawn from the process wide
+ * SecureRandom (SignatureUnit.getRandom()) and passed to setSeed, and the same again after every
+ * reseedInterval uses.  A use is one call of current(), i.e. one key pair in createRandomKeyPair.  A DRBG
+ * instance already seeds itself from the platform entropy source when created, so for it these bytes are
+ * additional input; the SHA1PRNG fallback takes the first setSeed as its entire seed.  The shared source is
+ * only touched for those few seed bytes.
+ */
+public final class LocalRandom {
+
+	public final static long DEFAULT_RESEED_INTERVAL = 1 << 16;
+	protected final static int SEED_BYTES = 32;
+
+	protected static volatile long reseedInterval = DEFAULT_RESEED_INTERVAL;
+
+	protected final static ThreadLocal<LocalRandom> locals = ThreadLocal.withInitial(LocalRandom::new);
+
+	protected final SecureRandom random;
+	protected long uses = 0;
+	protected long reseeds = 0;
+
+	protected LocalRandom() {
+		random = newGenerator();
+		random.setSeed(seed());
+	}
+
+	// The calling thread's generator, reseeded first if it is due
+	public static SecureRandom current() {
+		LocalRandom local = locals.get();
+		if (++local.uses >= reseedInterval) {
+			local.random.setSeed(seed());
+			local.uses = 0;
+			++local.reseeds;
+		}
+		return local.random;
+	}
+
+	// Number of uses between reseeds of each thread's generator, takes effect on each thread's next use
+	public static void setReseedInterval(long interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Reseed interval must be positive : "+interval);
+		}
+		reseedInterval = interval;
+	}
+
+	public static long getReseedInterval() {
+		return reseedInterval;
+	}
+
+	// Reseeds of the calling thread's generator so far, not counting its initial seed
+	public static long getReseeds() {
+		return locals.get().reseeds;
+	}
+
+	protected static byte[] seed() {
+		byte[] seed = new byte[SEED_BYTES];
+		SignatureUnit.getRandom().nextBytes(seed);
+		return seed;
+	}
+
+	// A generator that is not itself backed by a shared, locked source
+	protected static SecureRandom newGenerator() {
+		for (String algorithm : new String[] {"DRBG", "SHA1PRNG"}) {
+			try {
+				return SecureRandom.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				// not on this JVM, try the next one
+			}
+		}
+		return new SecureRandom();
+	}
+}
@@ -0,0 +1,316 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.SignatureException;
+import java.util.stream.IntStream;
+
+/*
+ * Many-time signatures from the one-time scheme: 2^height one-time public keys are the leaves of a 
+ * Merkle tree and the 32 byte root is the only thing that needs distributing.
+ *
+ * A signature is the leaf index, the one-time signature, the leaf's one-time public key and the
+ * authentication path (the sibling of every node on the way from the leaf to the root).  Leaves are
+ * used strictly in order and never twice.
+ *
+ * Authentication paths are produced with log space traversal (Szydlo's variant of the BDS/fractal
+ * family): the signer keeps the current path plus one treehash instance per level, each building the
+ * node its level will need next, and spends at most 2*height-1 leaf computations per signature on
+ * them.  Memory and per signature work are therefore logarithmic in the number of leaves - nothing is
+ * ever rebuilt from the whole tree.  Building the tree computes every leaf once: the tree is split into
+ * subtrees, one per unit of parallelism, each reduced to its root by a streaming treehash, so only the
+ * subtree roots and a stack per subtree are held rather than the leaves.
+ *
+ * Verifiers take the tree height with the root - a signature never chooses its own path length.
+ *
+ * Internal nodes are SHA-256(0x01 || left || right); a leaf is the one-time public key itself.
+ */
+public class MerkleSigner {
+
+	public final static int MAX_HEIGHT = 30;
+	protected final static int NODE_BYTES = 32;
+	protected final static byte NODE_PREFIX = 1;
+
+	protected final SignatureUnit unit;
+	protected final MerkleLeafSource source;
+	protected final int height;
+	protected final byte[] root;
+
+	// authentication path of the next leaf to sign
+	protected final byte[][] auth;
+	protected final TreeHash[] treeHash;
+	protected int nextIndex = 0;
+
+	public MerkleSigner(SignatureUnit unit, MerkleLeafSource source, int height) {
+		if (height < 1 || height > MAX_HEIGHT) {
+			throw new IllegalArgumentException("Height must be between 1 and "+MAX_HEIGHT+" : "+height);
+		}
+		this.unit = unit;
+		this.source = source;
+		this.height = height;
+		this.auth = new byte[height][];
+		this.treeHash = new TreeHash[height];
+
+		int split = Math.min(height, splitHeight());
+		int subtreeHeight = height - split;
+		// nodes 0 and 1 of each level below the split, all inside the first subtree
+		final byte[][][] edge = new byte[subtreeHeight][2][];
+		byte[][] level = new byte[1 << split][];
+		final byte[][] roots = level;
+		IntStream.range(0, roots.length).parallel().forEach(ii -> 
+				roots[ii] = subtreeRoot(ii << subtreeHeight, subtreeHeight, ii==0 ? edge : null));
+
+		for (int hh = 0; hh < height; ++hh) {
+			treeHash[hh] = new TreeHash(hh);
+			if (hh < subtreeHeight) {
+				auth[hh] = edge[hh][1];
+				treeHash[hh].result = edge[hh][0];
+				continue;
+			}
+			// leaf 0's path, and the node each level's first refresh (at leaf 2^h) will need
+			auth[hh] = level[1];
+			treeHash[hh].result = level[0];
+
+			byte[][] parents = new byte[level.length >> 1][];
+			for (int ii = 0; ii < parents.length; ++ii) {
+				parents[ii] = hashNodes(level[ii << 1], level[(ii << 1) + 1]);
+			}
+			level = parents;
+		}
+		this.root = level[0];
+	}
+
+	public byte[] getRoot() {
+		return root.clone();
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	// signatures left before the tree is used up
+	public synchronized int getRemaining() {
+		return (1 << height) - nextIndex;
+	}
+
+	public synchronized byte[] sign(byte[] message) throws SignatureException {
+		if (nextIndex >= 1 << height) {
+			throw new SignatureException("All "+(1 << height)+" leaves of the tree have been used");
+		}
+		int index = nextIndex;
+		KeyPair keyPair = source.keyPair(index);
+		byte[] ots = unit.signDigest((FFSHPrivateKey) keyPair.getPrivate(), SignatureUnit.localHasher().digest(message));
+		try {
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream(8 + ots.length + NODE_BYTES * (height + 1));
+			final DataOutputStream dos = new DataOutputStream(bos);
+			dos.writeInt(index);
+			dos.writeShort(ots.length);
+			dos.write(ots);
+			dos.write(keyPair.getPublic().getEncoded());
+			for (byte[] node : auth) {
+				dos.write(node);
+			}
+			dos.flush();
+			++nextIndex;
+			nextAuth(nextIndex);
+			return bos.toByteArray();
+		} catch (IOException e) {
+			throw new SignatureException(e);
+		}
+	}
+
+	// height is the one the root was published with, the signature must carry a path of exactly that length
+	public static boolean verify(SignatureUnit unit, byte[] root, int height, byte[] message, byte[] signature) throws SignatureException {
+		if (height < 1 || height > MAX_HEIGHT) {
+			throw new IllegalArgumentException("Height must be between 1 and "+MAX_HEIGHT+" : "+height);
+		}
+		try {
+			final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(signature));
+			int index = dis.readInt();
+			byte[] ots = new byte[dis.readUnsignedShort()];
+			dis.readFully(ots);
+			byte[] node = new byte[NODE_BYTES];
+			dis.readFully(node);
+			if (dis.available() != height * NODE_BYTES || index < 0 || index >= 1 << height) {
+				return false;
+			}
+
+			MessageDigest hasher = SignatureUnit.localHasher();
+			byte[] digest = hasher.digest(message);
+			if (!unit.verifyDigest(new FFSHPublicKey(node), digest, ots, hasher)) {
+				return false;
+			}
+
+			byte[] sibling = new byte[NODE_BYTES];
+			for (int hh = 0; hh < height; ++hh) {
+				dis.readFully(sibling);
+				node = ((index >>> hh) & 1)==0 ? hashNodes(node, sibling) : hashNodes(sibling, node);
+			}
+			return MessageDigest.isEqual(node, root);
+		} catch (IOException e) {
+			throw new SignatureException(e);
+		}
+	}
+
+	// Move the authentication path on to leaf s, then spend the update budget on the treehash instances
+	protected void nextAuth(int s) {
+		if (s >= 1 << height) {
+			return;
+		}
+		for (int hh = 0; hh < height; ++hh) {
+			if ((s & ((1 << hh) - 1)) != 0) {
+				break;
+			}
+			// the node finished by this level's treehash is the new sibling; start on the one needed 2^h leaves on
+			auth[hh] = treeHash[hh].result;
+			if (s + (1L << hh) < 1L << height) {
+				treeHash[hh].initialize((s + (1 << hh)) ^ (1 << hh));
+			} else {
+				treeHash[hh].finish();
+			}
+		}
+
+		for (int ii = 0; ii < 2 * height - 1; ++ii) {
+			// lowest tail first, ties to the lowest level
+			TreeHash focus = null;
+			for (TreeHash instance : treeHash) {
+				if (instance.low() != Integer.MAX_VALUE && (focus==null || instance.low() < focus.low())) {
+					focus = instance;
+				}
+			}
+			if (focus==null) {
+				break;
+			}
+			focus.update();
+		}
+	}
+
+	// log2 of the number of subtrees the build is split into - enough to keep every core busy, their roots
+	// being the only level held in full
+	protected int splitHeight() {
+		return 32 - Integer.numberOfLeadingZeros(4 * Runtime.getRuntime().availableProcessors() - 1);
+	}
+
+	// Root of the subtree of the given height starting at firstLeaf, holding one node per level at most.
+	// edge, when given, receives nodes 0 and 1 of every level of the subtree
+	protected byte[] subtreeRoot(int firstLeaf, int subtreeHeight, byte[][][] edge) {
+		byte[][] nodes = new byte[subtreeHeight + 1][];
+		int[] nodeHeights = new int[subtreeHeight + 1];
+		int size = 0;
+		for (int index = firstLeaf; index < firstLeaf + (1 << subtreeHeight); ++index) {
+			byte[] node = leaf(index);
+			int nodeHeight = 0;
+			record(edge, nodeHeight, index, node);
+			while (size > 0 && nodeHeights[size - 1]==nodeHeight) {
+				node = hashNodes(nodes[--size], node);
+				nodes[size] = null;
+				++nodeHeight;
+				record(edge, nodeHeight, index >>> nodeHeight, node);
+			}
+			nodes[size] = node;
+			nodeHeights[size++] = nodeHeight;
+		}
+		return nodes[0];
+	}
+
+	private static void record(byte[][][] edge, int nodeHeight, int index, byte[] node) {
+		if (edge != null && nodeHeight < edge.length && index < 2) {
+			edge[nodeHeight][index] = node;
+		}
+	}
+
+	protected byte[] leaf(int index) {
+		return source.keyPair(index).getPublic().getEncoded();
+	}
+
+	protected static byte[] hashNodes(byte[] left, byte[] right) {
+		MessageDigest hasher = SignatureUnit.localHasher();
+		hasher.update(NODE_PREFIX);
+		hasher.update(left);
+		hasher.update(right);
+		return hasher.digest();
+	}
+
+	// Builds one node of a given height from its leaves, one leaf per update, keeping only a partial stack
+	protected class TreeHash {
+		protected final int targetHeight;
+		protected final byte[][] nodes;
+		protected final int[] nodeHeights;
+		protected int size = 0;
+		protected int nextLeaf;
+		protected boolean active = false;
+		protected byte[] result;
+
+		protected TreeHash(int targetHeight) {
+			this.targetHeight = targetHeight;
+			this.nodes = new byte[targetHeight + 1][];
+			this.nodeHeights = new int[targetHeight + 1];
+		}
+
+		protected void initialize(int startLeaf) {
+			nextLeaf = startLeaf;
+			size = 0;
+			result = null;
+			active = true;
+		}
+
+		protected void finish() {
+			size = 0;
+			result = null;
+			active = false;
+		}
+
+		// height of the lowest node held, the target height if none, MAX_VALUE if there is nothing to do
+		protected int low() {
+			if (!active || result!=null) {
+				return Integer.MAX_VALUE;
+			}
+			return size==0 ? targetHeight : nodeHeights[size - 1];
+		}
+
+		protected void update() {
+			byte[] node = leaf(nextLeaf++);
+			int nodeHeight = 0;
+			while (size > 0 && nodeHeights[size - 1]==nodeHeight) {
+				node = hashNodes(nodes[--size], node);
+				nodes[size] = null;
+				++nodeHeight;
+			}
+			if (nodeHeight==targetHeight) {
+				result = node;
+			} else {
+				nodes[size] = node;
+				nodeHeights[size++] = nodeHeight;
+			}
+		}
+	}
+}
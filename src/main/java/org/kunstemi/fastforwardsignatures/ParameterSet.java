@@ -0,0 +1,163 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kunstemi.fastforwardsignatures.ffh.RecurrenceCalculator;
+
+/*
+ * A named combination of recurrence coefficients and modulus, identified on the wire by a one byte id.
+ *
+ * Compact signatures carry only this id instead of the modulus, so both sides must have the same set
+ * registered under the same id.  They also carry a short fingerprint of the coefficients and modulus, so a
+ * set registered differently on the two sides is refused rather than verified against.  Ids 1 and 2 are reserved for the default 384 and 256 bit moduli with the
+ * standard coefficients; deployments using their own prime register it under any other free id.
+ * Also the AlgorithmParameterSpec taken by the provider's KeyPairGenerator.
+ */
+public final class ParameterSet implements AlgorithmParameterSpec {
+
+	public final static int[] STANDARD_COEFFICIENTS = {911, 691, 2733, 2073, -1357, 2468};
+	public final static int FINGERPRINT_BYTES = 4;
+
+	protected final static ConcurrentHashMap<Integer, ParameterSet> registry = new ConcurrentHashMap<>();
+
+	public final static ParameterSet DEFAULT_384 = register(new ParameterSet(1, STANDARD_COEFFICIENTS, FFSHKey.DEFAULT_MODULO_384));
+	public final static ParameterSet DEFAULT_256 = register(new ParameterSet(2, STANDARD_COEFFICIENTS, FFSHKey.DEFAULT_MODULO_256));
+
+	protected final int id;
+	protected final int[] coefficients;
+	protected final BigInteger modulus;
+	protected final byte[] fingerprint;
+
+	public ParameterSet(int id, int[] coefficients, BigInteger modulus) {
+		if (id < 0 || id > 255) {
+			throw new IllegalArgumentException("Parameter set id must fit in a byte : "+id);
+		}
+		if (coefficients.length != 6) {
+			throw new IllegalArgumentException("Need the six coefficients a, b, c, d, f, g");
+		}
+		this.id = id;
+		this.coefficients = coefficients.clone();
+		this.modulus = modulus;
+		this.fingerprint = fingerprint(this.coefficients, modulus);
+	}
+
+	// Leading bytes of SHA-256 over the coefficients (4 bytes big endian each) and the modulus
+	protected static byte[] fingerprint(int[] coefficients, BigInteger modulus) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (int coefficient : coefficients) {
+				md.update(new byte[] { (byte) (coefficient >>> 24), (byte) (coefficient >>> 16), (byte) (coefficient >>> 8), (byte) coefficient });
+			}
+			md.update(modulus.toByteArray());
+			return Arrays.copyOf(md.digest(), FINGERPRINT_BYTES);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// Fails if the id is already taken by a different set; registering an equal set again is harmless
+	public static ParameterSet register(ParameterSet set) {
+		ParameterSet existing = registry.putIfAbsent(set.id, set);
+		if (existing != null && !existing.equals(set)) {
+			throw new IllegalArgumentException("Parameter set id "+set.id+" is already registered");
+		}
+		return existing == null ? set : existing;
+	}
+
+	// null if nothing is registered under the id
+	public static ParameterSet forId(int id) {
+		return registry.get(id);
+	}
+
+	// The registered set with these coefficients and modulus, or null
+	public static ParameterSet find(int[] coefficients, BigInteger modulus) {
+		for (ParameterSet set : registry.values()) {
+			if (set.modulus.equals(modulus) && Arrays.equals(set.coefficients, coefficients)) {
+				return set;
+			}
+		}
+		return null;
+	}
+
+	public RecurrenceCalculator newCalculator() {
+		return RecurrenceCalculator.create(coefficients[0], coefficients[1], coefficients[2]
+				, coefficients[3], coefficients[4], coefficients[5], modulus);
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public int[] getCoefficients() {
+		return coefficients.clone();
+	}
+
+	public BigInteger getModulus() {
+		return modulus;
+	}
+
+	public byte[] getFingerprint() {
+		return fingerprint.clone();
+	}
+
+	// Whether the FINGERPRINT_BYTES at pos in bytes are this set's fingerprint
+	public boolean matchesFingerprint(byte[] bytes, int pos) {
+		if (bytes.length < pos + FINGERPRINT_BYTES) {
+			return false;
+		}
+		for (int ii = 0; ii < FINGERPRINT_BYTES; ++ii) {
+			if (bytes[pos + ii] != fingerprint[ii]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Bytes of each fixed size P/Q field - values are below the modulus so need no sign byte
+	public int fieldWidth() {
+		return (modulus.bitLength() + 7) >>> 3;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof ParameterSet)) {
+			return false;
+		}
+		ParameterSet set = (ParameterSet) other;
+		return id == set.id && modulus.equals(set.modulus) && Arrays.equals(coefficients, set.coefficients);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * id + modulus.hashCode()) + Arrays.hashCode(coefficients);
+	}
+}
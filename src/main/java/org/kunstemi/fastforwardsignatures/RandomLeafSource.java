@@ -0,0 +1,55 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.KeyPair;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Leaf source backed by independently random key pairs, each generated on first use and then held in
+ * memory so later requests for the same index agree.  Memory grows with the number of leaves, so this 
+ * suits small trees.
+ */
+public class RandomLeafSource implements MerkleLeafSource {
+
+	protected final SignatureUnit unit;
+	protected final AtomicReferenceArray<KeyPair> keyPairs;
+
+	public RandomLeafSource(SignatureUnit unit, int leaves) {
+		this.unit = unit;
+		this.keyPairs = new AtomicReferenceArray<>(leaves);
+	}
+
+	@Override
+	public KeyPair keyPair(int index) {
+		KeyPair keyPair = keyPairs.get(index);
+		if (keyPair==null) {
+			// racing threads may both generate, only the first one stored is ever used
+			keyPairs.compareAndSet(index, null, unit.createRandomKeyPair());
+			keyPair = keyPairs.get(index);
+		}
+		return keyPair;
+	}
+}
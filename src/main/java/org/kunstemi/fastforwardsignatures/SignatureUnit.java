@@ -26,6 +26,12 @@ THE SOFTWARE.
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.InvalidKeyException;
 import java.security.InvalidParameterException;
 import java.security.KeyPair;
@@ -37,8 +43,16 @@ import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
+import org.kunstemi.fastforwardsignatures.ffh.LimbRecurrenceCalculator;
 import org.kunstemi.fastforwardsignatures.ffh.PQPair;
+import org.kunstemi.fastforwardsignatures.ffh.PQRelations;
 import org.kunstemi.fastforwardsignatures.ffh.RecurrenceCalculator;
 
 public class SignatureUnit extends Signature{
@@ -56,14 +70,58 @@ public class SignatureUnit extends Signature{
 	
 	protected final static BigInteger skipLength = BigInteger.valueOf(Integer.MAX_VALUE);
 	
+	// Parameters accepted by setParameter
+	// Boolean - compute the two signature chains concurrently
+	public final static String PARAM_PARALLEL = "parallel";
+	// Executor - where the second chain runs when parallel, the common fork-join pool if not set
+	public final static String PARAM_EXECUTOR = "executor";
+	// Boolean - sign in the CompactSignature format, needs a registered parameter set
+	public final static String PARAM_COMPACT = "compact";
+	
+	protected final static ThreadLocal<MessageDigest> localHashers = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	});
+	
+	// Bytes of a file mapped at a time when signing or verifying a file
+	protected final static long MAP_CHUNK = 1L << 26;
+	
+	// the digest as little endian limbs
+	protected final static int COUNT_LIMBS = HASH_BITS / 64;
+	
+	// set when the calculator works in limbs, enabling the allocation free sign and verify
+	protected final LimbRecurrenceCalculator limbCalculator;
+	// the FFSHKey encoding of just the modulus, which starts every signature and end state encoding
+	protected final byte[] encodedModulus;
+	protected final int valueWidth;
+	protected final ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(Scratch::new);
+	
+	// keyed by registered parameter set only, so at most one unit per set id
+	protected final static ConcurrentHashMap<ParameterSet, SignatureUnit> sharedUnits = new ConcurrentHashMap<>();
+	
+	protected boolean parallel = false;
+	protected Executor executor = null;
+	protected boolean compact = false;
+	
+	// null when the coefficients and modulus are not a registered parameter set
+	protected final ParameterSet parameters;
+	
 	// Generate a signature unit given a prime modulo
 	public SignatureUnit(BigInteger modulo) {
-		this(new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, modulo));
+		this(CalculatorRegistry.get(ParameterSet.STANDARD_COEFFICIENTS, modulo)
+				, ParameterSet.find(ParameterSet.STANDARD_COEFFICIENTS, modulo));
+	}
+	
+	public SignatureUnit(ParameterSet parameters) {
+		this(CalculatorRegistry.get(parameters), parameters);
 	}
 
 	// Generate a signature unit - calculate the modulo	
 	public SignatureUnit(SecureRandom random, int probablePrimeProbability) {
-		this(new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, genModulo(random, 374,384, probablePrimeProbability)));
+		this(RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, genModulo(random, 374,384, probablePrimeProbability)));
 	}
 	
 	public SignatureUnit(SecureRandom random) {
@@ -82,6 +140,17 @@ public class SignatureUnit extends Signature{
 		return calculator.getM();
 	}
 	
+	// null if this unit's coefficients and modulus are not registered
+	public ParameterSet parameterSet() {
+		return parameters;
+	}
+	
+	// Switch the calculator to windowed jumps - wider windows take fewer steps per jump but hold (2^bits-1)/bits times more relations.
+	// The calculator may be shared through CalculatorRegistry, in which case every unit of the same parameters switches
+	public void setWindowBits(int windowBits) {
+		calculator.precomputeScaled(skipLength, HASH_BITS + 1, windowBits);
+	}
+	
 	
 	public static BigInteger genModulo(SecureRandom random, int lowBits, int highBits, int probability) {
 		// find a probable prime modulo somewhere between lowBits and highBits in bitLength
@@ -106,8 +175,18 @@ public class SignatureUnit extends Signature{
 	}
 
 	protected SignatureUnit(RecurrenceCalculator req)  {
+		this(req, null);
+	}
+	
+	protected SignatureUnit(RecurrenceCalculator req, ParameterSet parameters)  {
 		super("FFHS");
 		this.calculator = req;
+		this.parameters = parameters;
+		this.limbCalculator = req instanceof LimbRecurrenceCalculator ? (LimbRecurrenceCalculator) req : null;
+		this.valueWidth = FFSHKey.valueWidth(req.getM());
+		this.encodedModulus = new byte[FFSHKey.encodedLength(req.getM(), 0)];
+		FFSHKey.encode(new BigInteger[] { req.getM() }, encodedModulus, 0);
+		warm(req);
 		try {
 			this.hasher = MessageDigest.getInstance("SHA-256");
 		} catch (NoSuchAlgorithmException e) {
@@ -115,10 +194,21 @@ public class SignatureUnit extends Signature{
 		}
 	}	
 
-	public KeyPair createRandomKeyPair() {
-		synchronized (this.sRandom) {
-			return createRandomKeyPair(calculator, this, this.sRandom, false);
+	// Builds the relations every signature unit needs, unless the calculator already has them (e.g. a shared one)
+	protected static RecurrenceCalculator warm(RecurrenceCalculator calculator) {
+		// every jump is skipLength * (a count of at most 2^HASH_BITS) - build those relations up front, so the calculator 
+		// only walks the bits of the count and is only ever read from here on
+		if (!calculator.hasScaledTable(skipLength, HASH_BITS + 1)) {
+			calculator.precomputeScaled(skipLength, HASH_BITS + 1);
 		}
+		// key generation always makes the same full jump, collapse it to one relation now
+		calculator.relationFor(skipLength.multiply(MAX_SHIFT));
+		return calculator;
+	}
+
+	// Start states come from the calling thread's own generator, so no lock is held while the chains are computed
+	public KeyPair createRandomKeyPair() {
+		return createRandomKeyPair(calculator, this, LocalRandom.current(), false);
 	}
 	
 	
@@ -126,6 +216,10 @@ public class SignatureUnit extends Signature{
 	public static KeyPair createRandomKeyPair(RecurrenceCalculator calc, SignatureUnit unit, SecureRandom random, boolean checkWrap) {
 		BigInteger m = unit.modulo();
 		int l = m.bitLength();
+		// the whole skipLength * MAX_SHIFT fast forward as a single cached relation
+		PQRelations fullJump = calc.relationFor(skipLength.multiply(MAX_SHIFT));
+		// a jump of m shares no high bits with the full jump, so it is cached as a relation of its own too
+		PQRelations wrapJump = checkWrap ? calc.relationFor(m) : null;
 		while (true) {
 			try {
 				byte[] pk = null;
@@ -137,28 +231,23 @@ public class SignatureUnit extends Signature{
 					BigInteger p2 = (new BigInteger(l+256,random)).mod(m);
 					BigInteger q2 = (new BigInteger(l+256,random)).mod(m);
 					
-					BigInteger sl2 = skipLength.multiply(MAX_SHIFT);
 					pv = new FFSHPrivateKey( m, p1, q1,  p2, q2);
-					PQPair ret1 = calc.calculate(p1, q1, BigInteger.ZERO, sl2);
-					PQPair ret2 = calc.calculate(p2, q2, BigInteger.ZERO, sl2);
+					PQPair ret1 = calc.calculate(p1, q1, BigInteger.ZERO, fullJump);
+					PQPair ret2 = calc.calculate(p2, q2, BigInteger.ZERO, fullJump);
 					
 					if (checkWrap) {
 						//////////////
 						// Simple check to make sure we don't have any obvious cycles when we clock over/overflow our exogenous counter 
 						// check we don't easily move back to start state by clocking over
 						// note - i've run this program many times with checkWrap on and never seen such a cycle
-						PQPair check1 = calc.calculate(p1, q1, BigInteger.ZERO, m);
-						PQPair check2 = calc.calculate(p2, q2, BigInteger.ZERO, m);
+						PQPair check1 = calc.calculate(p1, q1, BigInteger.ZERO, wrapJump);
+						PQPair check2 = calc.calculate(p2, q2, BigInteger.ZERO, wrapJump);
 						if ( (check1.getP().equals(ret1.getP())) || (check2.getP().equals(ret2.getP())) ) {
 							continue; // possible wrap around 
 						}
 					}
 					
-					byte[] out = FFSHKey.toSingles( m, ret1.getP(),ret1.getQ(), ret2.getP(),ret2.getQ());
-					
-					// now hash it
-					MessageDigest hash = MessageDigest.getInstance("SHA-256");
-					pk = hash.digest(out);
+					pk = endStateHash(localHasher(), m, ret1, ret2);
 					break;
 				} 
 				
@@ -172,6 +261,49 @@ public class SignatureUnit extends Signature{
 		}		
 	}
 	
+	// Key pair for given start states, e.g. ones derived from a KeySeed rather than drawn at random
+	public static KeyPair createKeyPair(RecurrenceCalculator calc, BigInteger p1, BigInteger q1, BigInteger p2, BigInteger q2) {
+		BigInteger m = calc.getM();
+		PQRelations fullJump = calc.relationFor(skipLength.multiply(MAX_SHIFT));
+		try {
+			PQPair ret1 = calc.calculate(p1, q1, BigInteger.ZERO, fullJump);
+			PQPair ret2 = calc.calculate(p2, q2, BigInteger.ZERO, fullJump);
+			return new KeyPair(new FFSHPublicKey(endStateHash(localHasher(), m, ret1, ret2)), new FFSHPrivateKey(m, p1, q1, p2, q2));
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	// The public key is the hash of all end states and settings
+	protected static byte[] endStateHash(MessageDigest hash, BigInteger m, PQPair ret1, PQPair ret2) {
+		hash.reset();
+		FFSHKey.update(hash, m, ret1.getP(), ret1.getQ(), ret2.getP(), ret2.getQ());
+		return hash.digest();
+	}
+	
+	public KeyPair createKeyPair(BigInteger p1, BigInteger q1, BigInteger p2, BigInteger q2) {
+		return createKeyPair(calculator, p1, q1, p2, q2);
+	}
+	
+	// One unit per registered parameter set, for callers that only use the thread safe 
+	// signDigest / verifyDigest / createRandomKeyPair and so never touch the unit's Signature state.
+	// Only registered sets are accepted, which bounds the units (and calculators) kept alive here
+	public static SignatureUnit shared(ParameterSet parameters) {
+		if (!parameters.equals(ParameterSet.forId(parameters.getId()))) {
+			throw new IllegalArgumentException("Parameter set "+parameters.getId()+" is not registered");
+		}
+		return sharedUnits.computeIfAbsent(parameters, SignatureUnit::new);
+	}
+	
+	// The shared unit of the registered set with the standard coefficients and this modulus
+	public static SignatureUnit shared(BigInteger modulo) {
+		ParameterSet parameters = ParameterSet.find(ParameterSet.STANDARD_COEFFICIENTS, modulo);
+		if (parameters == null) {
+			throw new IllegalArgumentException("No registered parameter set for modulus "+modulo);
+		}
+		return shared(parameters);
+	}
+	
 	public static Signature signature() {
 		return new  SignatureUnit();
 	}
@@ -198,26 +330,53 @@ public class SignatureUnit extends Signature{
 		hasher.update(b,off,len);		
 	}
 
+	// Direct and mapped buffers go to the digest as they are, without a copy through a heap array first
+	@Override
+	protected void engineUpdate(ByteBuffer input) {
+		hasher.update(input);
+	}
+
 	@Override
 	protected byte[] engineSign() throws SignatureException {
-		byte[] dataSignature = hasher.digest();
+		return signDigest(this.privateKey, digestInto(hasher, scratch().message));
+	}
+
+	// Sign an already computed SHA-256 digest.  Only reads the shared calculator, so unlike the Signature
+	// methods it may be called from many threads at once
+	public byte[] signDigest(FFSHPrivateKey privateKey, byte[] dataSignature) throws SignatureException {
+		return signDigest(privateKey, dataSignature, compact);
+	}
+	
+	// As signDigest, choosing the output format per call - compact needs a registered parameter set
+	public byte[] signDigest(FFSHPrivateKey privateKey, byte[] dataSignature, boolean compact) throws SignatureException {
+		if (compact && parameters==null) {
+			throw new SignatureException("Compact signatures need a registered parameter set");
+		}
 		try {
-			BigInteger[] vals = this.privateKey.getVals();
+			BigInteger[] vals = privateKey.getVals();
 			BigInteger m = vals[0];
 			BigInteger p1 = vals[1];
 			BigInteger q1 = vals[2];			
 			BigInteger p2 = vals[3];
 			BigInteger q2 = vals[4];
 			
+			if (limbCalculator!=null && !parallel && m.equals(calculator.getM()) && dataSignature.length==HASH_BITS/8) {
+				return signLimbs(p1, q1, p2, q2, dataSignature, compact);
+			}
+			
 			BigInteger sig = new BigInteger(1,dataSignature);
-			BigInteger jump1 = skipLength.multiply(sig);
-
 			BigInteger inverse = MAX_SHIFT.subtract(BigInteger.ONE).subtract(sig);
-			BigInteger jump2 = skipLength.multiply(inverse);
 			
-			PQPair ret1 = calculator.calculate(p1, q1, BigInteger.ZERO, jump1);
-			PQPair ret2 = calculator.calculate(p2, q2, BigInteger.ZERO, jump2);
+			// jumps of skipLength*sig and skipLength*inverse
+			PQPair[] ret = calculateChains(
+					() -> calculator.calculateScaled(p1, q1, BigInteger.ZERO, sig),
+					() -> calculator.calculateScaled(p2, q2, BigInteger.ZERO, inverse));
+			PQPair ret1 = ret[0];
+			PQPair ret2 = ret[1];
 
+			if (compact) {
+				return CompactSignature.encode(parameters, ret1.getP(), ret1.getQ(), ret2.getP(), ret2.getQ());
+			}
 			byte[] signature = FFSHKey.toSingles(m,ret1.getP(),ret1.getQ(),ret2.getP(),ret2.getQ());
 			return signature;  
 		} catch (IOException e) {
@@ -225,13 +384,86 @@ public class SignatureUnit extends Signature{
 		}
 	}
 
+	// Whether a compact signature's set is this unit's coefficients and modulus - units without a registered set
+	// use the standard coefficients
+	protected boolean ownSet(ParameterSet set) {
+		if (set == null) {
+			return false;
+		}
+		if (parameters != null) {
+			return parameters.equals(set);
+		}
+		return set.getModulus().equals(calculator.getM()) && Arrays.equals(set.coefficients, ParameterSet.STANDARD_COEFFICIENTS);
+	}
+
+	// Both chains in the calculator's limb domain, in this thread's scratch - allocates only the signature
+	protected byte[] signLimbs(BigInteger p1, BigInteger q1, BigInteger p2, BigInteger q2, byte[] dataSignature, boolean compact) {
+		Scratch scratch = scratch();
+		long[] sig = scratch.sig;
+		long[] inverse = scratch.inverse;
+		toCount(dataSignature, sig);
+		complement(sig, inverse);
+		
+		// jumps of skipLength*sig and skipLength*inverse
+		limbCalculator.set(scratch.first, p1, q1);
+		limbCalculator.calculateScaled(scratch.first, sig, COUNT_LIMBS);
+		limbCalculator.set(scratch.second, p2, q2);
+		limbCalculator.calculateScaled(scratch.second, inverse, COUNT_LIMBS);
+		
+		byte[] signature;
+		int offset;
+		int width;
+		if (compact) {
+			signature = new byte[CompactSignature.length(parameters)];
+			CompactSignature.putHeader(parameters, signature);
+			offset = CompactSignature.HEADER_BYTES;
+			width = parameters.fieldWidth();
+		} else {
+			signature = new byte[encodedModulus.length + 4 * valueWidth];
+			System.arraycopy(encodedModulus, 0, signature, 0, encodedModulus.length);
+			offset = encodedModulus.length;
+			width = valueWidth;
+		}
+		limbCalculator.getBytes(scratch.first, signature, offset, width);
+		limbCalculator.getBytes(scratch.second, signature, offset + 2 * width, width);
+		return signature;
+	}
+	
 	@Override
 	protected boolean engineVerify(byte[] sigBytes) throws SignatureException {
+		byte[] dataSignature = digestInto(hasher, scratch().message);
+		// the message hasher is free again once digested - reuse it for the end states
+		return verifyDigest(this.publicKey, dataSignature, sigBytes, hasher);
+	}
+
+	// Verify a signature over an already computed SHA-256 digest.  endStateHasher is used (and left reset) to 
+	// hash the end states; callers on several threads must each pass their own
+	public boolean verifyDigest(FFSHPublicKey publicKey, byte[] dataSignature, byte[] sigBytes, MessageDigest endStateHasher) throws SignatureException {
+		if (limbCalculator!=null && !parallel && dataSignature.length==HASH_BITS/8) {
+			int result = verifyLimbs(publicKey, dataSignature, sigBytes, endStateHasher);
+			if (result >= 0) {
+				return result==1;
+			}
+		}
 		try {
-			byte[] dataSignature = hasher.digest();
-			
-			BigInteger[] vals = FFSHKey.toArray(sigBytes);
+			// either format is accepted, told apart by the first byte
+			boolean compactSig = CompactSignature.isCompact(sigBytes);
+			if (compactSig && !ownSet(CompactSignature.findParameterSet(sigBytes))) {
+				// made for other coefficients or modulus, or a set registered differently here
+				return false;
+			}
+			BigInteger[] vals = compactSig ? CompactSignature.decode(sigBytes) : FFSHKey.toArray(sigBytes);
 			BigInteger m = vals[0];
+			if (!m.equals(calculator.getM())) {
+				// made for another modulus - never valid for this unit's chains
+				return false;
+			}
+			for (int ii = 1; ii < vals.length; ++ii) {
+				if (vals[ii].signum() < 0 || vals[ii].compareTo(m) >= 0) {
+					// only the reduced encoding is valid, as on the limb path - anything else would make signatures malleable
+					return false;
+				}
+			}
 			
 			BigInteger sig = (new BigInteger(1,dataSignature));
 			BigInteger jump1 = skipLength.multiply(sig);
@@ -239,10 +471,12 @@ public class SignatureUnit extends Signature{
 			BigInteger inverse = MAX_SHIFT.subtract(BigInteger.ONE).subtract(sig);
 			BigInteger jump2 = skipLength.multiply(inverse);
 			
-			BigInteger endState = skipLength.multiply(MAX_SHIFT);
-			
-			PQPair ret1 = calculator.calculate(vals[1], vals[2], jump1, endState.subtract(jump1));
-			PQPair ret2 = calculator.calculate(vals[3], vals[4], jump2, endState.subtract(jump2));
+			// remaining jumps to the end state skipLength*MAX_SHIFT, in multiples of skipLength
+			PQPair[] ret = calculateChains(
+					() -> calculator.calculateScaled(vals[1], vals[2], jump1, MAX_SHIFT.subtract(sig)),
+					() -> calculator.calculateScaled(vals[3], vals[4], jump2, MAX_SHIFT.subtract(inverse)));
+			PQPair ret1 = ret[0];
+			PQPair ret2 = ret[1];
 			
 			/*
 			BigInteger q = vals[3];
@@ -252,32 +486,241 @@ public class SignatureUnit extends Signature{
 			PQPair x2 = calculator.calculate(x1.getP(), x1.getQ(), jump2, endState.subtract(jump2));
 			*/
 			
-			byte[] out = FFSHKey.toSingles( m, ret1.getP(),ret1.getQ(), ret2.getP(),ret2.getQ());
-			// now hash it
-			MessageDigest hash = MessageDigest.getInstance("SHA-256");
-			byte[] pk = hash.digest(out);	
+			byte[] pk = endStateHash(endStateHasher, m, ret1, ret2);
 			
-			byte[] given = this.publicKey.getEncoded();
-			return Arrays.equals(pk, given);			
+			byte[] given = publicKey.getEncoded();
+			return MessageDigest.isEqual(pk, given);			
 		} catch (Exception e) {
 			throw new SignatureException(e);
 		}
 	}
 
+	// As verifyDigest without allocating: 1 valid, 0 invalid, -1 when the signature is for another modulus or holds
+	// values that are not reduced, which the general path handles
+	protected int verifyLimbs(FFSHPublicKey publicKey, byte[] dataSignature, byte[] sigBytes, MessageDigest endStateHasher) throws SignatureException {
+		int offset;
+		int width;
+		if (CompactSignature.isCompact(sigBytes)) {
+			ParameterSet set = CompactSignature.findParameterSet(sigBytes);
+			if (!ownSet(set) || sigBytes.length!=CompactSignature.length(set)) {
+				return -1;
+			}
+			offset = CompactSignature.HEADER_BYTES;
+			width = set.fieldWidth();
+		} else {
+			if (sigBytes.length!=encodedModulus.length + 4 * valueWidth) {
+				return -1;
+			}
+			for (int ii = 0; ii < encodedModulus.length; ++ii) {
+				if (sigBytes[ii]!=encodedModulus[ii]) {
+					return -1;
+				}
+			}
+			offset = encodedModulus.length;
+			width = valueWidth;
+		}
+		
+		Scratch scratch = scratch();
+		if (!limbCalculator.setBytes(scratch.first, sigBytes, offset, width) 
+				|| !limbCalculator.setBytes(scratch.second, sigBytes, offset + 2 * width, width)) {
+			return -1;
+		}
+		long[] sig = scratch.sig;
+		long[] inverse = scratch.inverse;
+		long[] remaining = scratch.remaining;
+		toCount(dataSignature, sig);
+		complement(sig, inverse);
+		
+		// from skipLength*sig on by MAX_SHIFT-sig = inverse+1 multiples of skipLength, and the other chain likewise
+		limbCalculator.setScaledN(scratch.first, sig, COUNT_LIMBS);
+		increment(inverse, remaining);
+		limbCalculator.calculateScaled(scratch.first, remaining, COUNT_LIMBS + 1);
+		limbCalculator.setScaledN(scratch.second, inverse, COUNT_LIMBS);
+		increment(sig, remaining);
+		limbCalculator.calculateScaled(scratch.second, remaining, COUNT_LIMBS + 1);
+		
+		// hash exactly what FFSHKey.update would for (m, P1, Q1, P2, Q2)
+		limbCalculator.getBytes(scratch.first, scratch.values, 0, valueWidth);
+		limbCalculator.getBytes(scratch.second, scratch.values, 2 * valueWidth, valueWidth);
+		endStateHasher.reset();
+		endStateHasher.update(encodedModulus);
+		endStateHasher.update(scratch.values, 0, 4 * valueWidth);
+		return publicKey.matches(digestInto(endStateHasher, scratch.endState)) ? 1 : 0;
+	}
+	
+	protected static byte[] digestInto(MessageDigest hash, byte[] out) throws SignatureException {
+		try {
+			hash.digest(out, 0, out.length);
+			return out;
+		} catch (DigestException e) {
+			throw new SignatureException(e);
+		}
+	}
+	
+	// big endian digest bytes into little endian limbs
+	protected static void toCount(byte[] digest, long[] count) {
+		for (int ii = 0; ii < COUNT_LIMBS; ++ii) {
+			long limb = 0;
+			for (int jj = 0; jj < 8; ++jj) {
+				limb |= (digest[digest.length - 1 - ii * 8 - jj] & 0xFFL) << (jj * 8);
+			}
+			count[ii] = limb;
+		}
+	}
+	
+	// 2^HASH_BITS - 1 - count
+	protected static void complement(long[] count, long[] out) {
+		for (int ii = 0; ii < COUNT_LIMBS; ++ii) {
+			out[ii] = ~count[ii];
+		}
+	}
+	
+	// count + 1, with room for the carry into bit HASH_BITS
+	protected static void increment(long[] count, long[] out) {
+		long carry = 1;
+		for (int ii = 0; ii < COUNT_LIMBS; ++ii) {
+			out[ii] = count[ii] + carry;
+			carry = carry!=0 && out[ii]==0 ? 1 : 0;
+		}
+		out[COUNT_LIMBS] = carry;
+	}
+	
+	protected Scratch scratch() {
+		return scratches.get();
+	}
+	
+	// Drops the calling thread's scratch for this unit and its calculator, e.g. before a pool thread moves on to
+	// other work.  Long lived units otherwise keep a few buffers per thread that has used them
+	public void releaseThreadState() {
+		scratches.remove();
+		if (limbCalculator != null) {
+			limbCalculator.releaseWorkspace();
+		}
+	}
+	
+	// This thread's chain states and buffers for the limb paths of sign and verify
+	protected class Scratch {
+		protected final byte[] message = new byte[HASH_BITS / 8];
+		protected final byte[] endState = new byte[HASH_BITS / 8];
+		protected final long[] sig = new long[COUNT_LIMBS];
+		protected final long[] inverse = new long[COUNT_LIMBS];
+		protected final long[] remaining = new long[COUNT_LIMBS + 1];
+		protected final byte[] values = new byte[4 * valueWidth];
+		protected final LimbRecurrenceCalculator.State first;
+		protected final LimbRecurrenceCalculator.State second;
+		
+		protected Scratch() {
+			first = limbCalculator==null ? null : limbCalculator.newState();
+			second = limbCalculator==null ? null : limbCalculator.newState();
+		}
+	}
+	
+	// Sign a file of any size, hashed through memory mapped chunks rather than read into the heap
+	public byte[] sign(FFSHPrivateKey privateKey, Path path) throws IOException, SignatureException {
+		return signDigest(privateKey, digest(path));
+	}
+
+	public byte[] sign(FFSHPrivateKey privateKey, FileChannel channel) throws IOException, SignatureException {
+		return signDigest(privateKey, digest(channel));
+	}
+
+	public boolean verify(FFSHPublicKey publicKey, Path path, byte[] sigBytes) throws IOException, SignatureException {
+		return verifyDigest(publicKey, digest(path), sigBytes, localHasher());
+	}
+
+	public boolean verify(FFSHPublicKey publicKey, FileChannel channel, byte[] sigBytes) throws IOException, SignatureException {
+		return verifyDigest(publicKey, digest(channel), sigBytes, localHasher());
+	}
+
+	public static byte[] digest(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return digest(channel);
+		}
+	}
+
+	// SHA-256 of the channel's whole content, mapped MAP_CHUNK bytes at a time
+	public static byte[] digest(FileChannel channel) throws IOException {
+		MessageDigest hash = localHasher();
+		long size = channel.size();
+		for (long position = 0; position < size; position += MAP_CHUNK) {
+			MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position));
+			hash.update(chunk);
+		}
+		return hash.digest();
+	}
+
+	// The two chains (digest and complement) are independent - when parallel, the second runs on the executor
+	// while the calling thread computes the first
+	protected PQPair[] calculateChains(Supplier<PQPair> first, Supplier<PQPair> second) {
+		if (!parallel) {
+			return new PQPair[] { first.get(), second.get() };
+		}
+		CompletableFuture<PQPair> other = CompletableFuture.supplyAsync(second, executor==null ? ForkJoinPool.commonPool() : executor);
+		PQPair ret1 = first.get();
+		try {
+			return new PQPair[] { ret1, other.join() };
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+	}
+
 	@Override
 	protected void engineSetParameter(String param, Object value) throws InvalidParameterException {
-		// TODO Auto-generated method stub
-		
+		if (PARAM_PARALLEL.equals(param)) {
+			if (!(value instanceof Boolean)) {
+				throw new InvalidParameterException(PARAM_PARALLEL+" takes a Boolean");
+			}
+			this.parallel = (Boolean) value;
+		} else if (PARAM_EXECUTOR.equals(param)) {
+			if (value!=null && !(value instanceof Executor)) {
+				throw new InvalidParameterException(PARAM_EXECUTOR+" takes an Executor");
+			}
+			this.executor = (Executor) value;
+		} else if (PARAM_COMPACT.equals(param)) {
+			if (!(value instanceof Boolean)) {
+				throw new InvalidParameterException(PARAM_COMPACT+" takes a Boolean");
+			}
+			if ((Boolean) value && parameters==null) {
+				throw new InvalidParameterException("Compact signatures need a registered parameter set");
+			}
+			this.compact = (Boolean) value;
+		} else {
+			throw new InvalidParameterException("Unknown parameter "+param);
+		}
 	}
 
 	@Override
 	protected Object engineGetParameter(String param) throws InvalidParameterException {
-		// TODO Auto-generated method stub
-		return null;
+		if (PARAM_PARALLEL.equals(param)) {
+			return parallel;
+		} else if (PARAM_EXECUTOR.equals(param)) {
+			return executor;
+		} else if (PARAM_COMPACT.equals(param)) {
+			return compact;
+		}
+		throw new InvalidParameterException("Unknown parameter "+param);
 	}
 
 	public static SecureRandom getRandom() {
 		return sRandom;
 	}	
+	
+	// A new SHA-256 digest, cloned from a prototype rather than looked up through the providers
+	public static MessageDigest newHasher() {
+		try {
+			MessageDigest hash = (MessageDigest) localHashers.get().clone();
+			hash.reset();
+			return hash;
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	// A SHA-256 digest owned by the calling thread, reset and ready for use
+	public static MessageDigest localHasher() {
+		MessageDigest hash = localHashers.get();
+		hash.reset();
+		return hash;
+	}
 }
 
@@ -0,0 +1,785 @@
+package org.kunstemi.fastforwardsignatures.ffh;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+
+/*
+ Base class for calculators that keep P, Q, n and every relation coefficient in fixed width arrays of
+ 64 bit limbs (little endian, limb 0 is the least significant) instead of BigInteger.
+
+ RecurrenceCalculator still decides which relations the tables hold, but every composition goes through
+ multiply here and runs on the limbs of the two relations; the BigInteger coefficients of the result are
+ decoded from its limbs.  Only the single step relation and relations read from a file are encoded from
+ BigInteger.  The per step work of calculate() is then a handful of fixed size multiplies and additions
+ with no allocation of intermediate numbers.
+
+ Subclasses supply the encoding (which may be a non-standard domain, e.g. Montgomery form) and the
+ modular multiplication.  Values are always kept fully reduced, i.e. in [0, m).
+
+ Lazy reduction: each coefficient, whether evaluated for a step or composed for a table entry, is a
+ sum of up to three products plus a constant.  The products are accumulated unreduced in a double width
+ accumulator and reduceWide is called once for the sum, instead of reducing every product and every
+ partial sum, so building tables needs no BigInteger mod either.
+
+ Allocation free use: a caller that keeps its own State (P, Q and n in the limb domain) and passes jump
+ counts as limb arrays goes through set / calculateScaled / getBytes without creating any object - the
+ intermediate values live in a per thread Workspace owned by the calculator.
+ */
+public abstract class LimbRecurrenceCalculator extends RecurrenceCalculator
+{
+    protected final int limbs;
+    protected final long[] modulus;
+    protected final ThreadLocal<Workspace> workspaces;
+    // the scaled table's unit in the limb domain, encoded on first use and kept with the table it came from
+    private volatile Object[] scaledUnit;
+
+    protected LimbRecurrenceCalculator(BigInteger a, BigInteger b, BigInteger c, BigInteger d
+            , BigInteger f, BigInteger g, BigInteger m)
+    {
+        super(a, b, c, d, f, g, m);
+        this.limbs = limbsFor(m);
+        this.modulus = toLimbs(m, limbs);
+        int size = this.limbs;
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(size));
+    }
+
+    /*
+     Converts x (any integer, may be negative or >= m) into the calculator's limb domain.
+     Called from the constructor, so may only rely on m.
+     */
+    protected abstract long[] encode(BigInteger x);
+
+    /*
+     Converts a limb domain value back into an integer in [0, m).
+     */
+    protected abstract BigInteger decode(long[] x);
+
+    /*
+     out = a*b in the limb domain.  wide is scratch space of at least 2*limbs+2 longs.
+     out may alias a or b.
+     */
+    protected abstract void multiply(long[] a, long[] b, long[] out, long[] wide);
+
+    /*
+     Converts plain limbs, already in [0, m), into the limb domain without allocating.  out may alias plain.
+     */
+    protected abstract void toDomain(long[] plain, long[] out, long[] wide);
+
+    /*
+     Converts a limb domain value into plain limbs in [0, m) without allocating.  out may alias x.
+     */
+    protected abstract void fromDomain(long[] x, long[] out, long[] wide);
+
+    /*
+     out = accumulator mod m, for an accumulator (2*limbs+2 longs) holding a sum of a few products of limb
+     domain values plus domain values shifted by productShift() limbs.  The accumulator is clobbered.
+     */
+    protected abstract void reduceWide(long[] accumulator, long[] out);
+
+    /*
+     Limbs by which a single domain value is shifted to line up with the products in an accumulator, i.e.
+     the value whose reduceWide is the value itself.
+     */
+    protected abstract int productShift();
+
+    @Override
+    protected PQRelations newRelations(BigInteger level, Recurrence pRelation, Recurrence qRelation)
+    {
+        return new LimbRelations(level, pRelation, qRelation
+                , this.encode(pRelation), this.encode(qRelation), this.encode(level));
+    }
+
+    /*
+     Composes the two relations on the limbs - the result applies relations1 then relations2.  The
+     BigInteger coefficients are decoded from the limbs, which are in [0, m) just as the BigInteger
+     composition leaves them.
+     */
+    @Override
+    protected PQRelations multiply(PQRelations relations1, PQRelations relations2)
+    {
+        LimbRelations first = (LimbRelations) relations1;
+        LimbRelations second = (LimbRelations) relations2;
+        long[] accumulator = workspaces.get().accumulator;
+        long[][] pLimbs = this.compose(first, second.pLimbs, accumulator);
+        long[][] qLimbs = this.compose(first, second.qLimbs, accumulator);
+        BigInteger level = first.getLevel().add(second.getLevel());
+        return new LimbRelations(level, this.decode(pLimbs), this.decode(qLimbs), pLimbs, qLimbs, this.encode(level));
+    }
+
+    /*
+     connection evaluated on the coefficient columns of relations, see RecurrenceCalculator.multiply.
+     */
+    private long[][] compose(LimbRelations relations, long[][] connection, long[] accumulator)
+    {
+        long[][] composed = new long[4][limbs];
+        for(int ii = 0;ii < 4;++ii)
+        {
+            this.clear(accumulator);
+            this.multiplyAccumulate(connection[0], relations.pLimbs[ii], accumulator);
+            this.multiplyAccumulate(connection[1], relations.qLimbs[ii], accumulator);
+            if(ii == 2)
+            {
+                this.addShifted(connection[2], accumulator);
+            }
+            else if(ii == 3)
+            {
+                this.multiplyAccumulate(connection[2], relations.levelLimbs, accumulator);
+                this.addShifted(connection[3], accumulator);
+            }
+            this.reduceWide(accumulator, composed[ii]);
+        }
+        return composed;
+    }
+
+    private Recurrence decode(long[][] relation)
+    {
+        Recurrence decoded = new Recurrence();
+        decoded.setpCoefficient(this.decode(relation[0]));
+        decoded.setqCoefficient(this.decode(relation[1]));
+        decoded.setnCoefficient(this.decode(relation[2]));
+        decoded.setConstant(this.decode(relation[3]));
+        return decoded;
+    }
+
+    private long[][] encode(Recurrence relation)
+    {
+        return new long[][] {
+                this.encode(relation.getpCoefficient())
+                , this.encode(relation.getqCoefficient())
+                , this.encode(relation.getnCoefficient())
+                , this.encode(relation.getConstant())
+        };
+    }
+
+    @Override
+    protected PQPair calculate(BigInteger p, BigInteger q, BigInteger n, PQRelations[] steps, int stepCount)
+    {
+        long[] currentP = this.encode(p);
+        long[] currentQ = this.encode(q);
+        long[] currentN = this.encode(n);
+        this.calculate(currentP, currentQ, currentN, steps, stepCount, workspaces.get());
+
+        PQPair pair = new PQPair();
+        pair.setP(this.decode(currentP));
+        pair.setQ(this.decode(currentQ));
+        return pair;
+    }
+
+    /*
+     The trie walk of RecurrenceCalculator.calculateMany on limb States, so the shared path is never
+     converted out of the limb domain - only each target's end state is decoded.
+     */
+    @Override
+    protected PQPair[] calculateMany(BigInteger p, BigInteger q, BigInteger n, PQRelations[][] plans, int[] stepCounts)
+    {
+        int depth = 0;
+        for(int stepCount : stepCounts)
+        {
+            depth = Math.max(depth, stepCount);
+        }
+        State[] path = new State[depth + 1];
+        path[0] = this.newState();
+        System.arraycopy(this.encode(p), 0, path[0].p, 0, limbs);
+        System.arraycopy(this.encode(q), 0, path[0].q, 0, limbs);
+        System.arraycopy(this.encode(n), 0, path[0].n, 0, limbs);
+
+        PQPair[] results = new PQPair[plans.length];
+        for(int ii = 0;ii < plans.length;++ii)
+        {
+            int shared = ii == 0 ? 0 : sharedSteps(plans[ii - 1], stepCounts[ii - 1], plans[ii], stepCounts[ii]);
+            for(int step = shared;step < stepCounts[ii];++step)
+            {
+                if(path[step + 1] == null)
+                {
+                    path[step + 1] = this.newState();
+                }
+                copy(path[step], path[step + 1], limbs);
+                this.calculate(path[step + 1], plans[ii][step]);
+            }
+            State state = path[stepCounts[ii]];
+            PQPair pair = new PQPair();
+            pair.setP(this.decode(state.p));
+            pair.setQ(this.decode(state.q));
+            results[ii] = pair;
+        }
+        return results;
+    }
+
+    private static void copy(State from, State to, int limbs)
+    {
+        System.arraycopy(from.p, 0, to.p, 0, limbs);
+        System.arraycopy(from.q, 0, to.q, 0, limbs);
+        System.arraycopy(from.n, 0, to.n, 0, limbs);
+    }
+
+    /*
+     Applies the steps in place to the limb domain p, q and n.
+     */
+    protected void calculate(long[] p, long[] q, long[] n, PQRelations[] steps, int stepCount, Workspace workspace)
+    {
+        for(int ii = 0;ii < stepCount;++ii)
+        {
+            LimbRelations relations = (LimbRelations) steps[ii];
+            this.calculate(relations.pLimbs, p, q, n, workspace.newP, workspace.accumulator);
+            this.calculate(relations.qLimbs, p, q, n, workspace.newQ, workspace.accumulator);
+            System.arraycopy(workspace.newP, 0, p, 0, limbs);
+            System.arraycopy(workspace.newQ, 0, q, 0, limbs);
+            this.add(n, relations.levelLimbs, n);
+        }
+    }
+
+    public State newState()
+    {
+        return new State(limbs);
+    }
+
+    /*
+     Starts state at (p, q) with n = 0.  Values already in [0, m) are converted without allocating.
+     */
+    public void set(State state, BigInteger p, BigInteger q)
+    {
+        Workspace workspace = workspaces.get();
+        this.set(p, state.p, workspace);
+        this.set(q, state.q, workspace);
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            state.n[ii] = 0;
+        }
+    }
+
+    private void set(BigInteger x, long[] out, Workspace workspace)
+    {
+        if(x.signum() < 0 || x.compareTo(m) >= 0)
+        {
+            System.arraycopy(this.encode(x), 0, out, 0, limbs);
+            return;
+        }
+        // testBit reads the magnitude in place, unlike toByteArray
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            out[ii] = 0;
+        }
+        for(int bit = x.bitLength() - 1;bit >= 0;--bit)
+        {
+            if(x.testBit(bit))
+            {
+                out[bit >>> 6] |= 1L << (bit & 63);
+            }
+        }
+        this.toDomain(out, out, workspace.wide);
+    }
+
+    /*
+     Sets P and Q of state from two consecutive unsigned big endian numbers of width bytes each.  Returns false,
+     leaving the state undefined, if either is not below m.
+     */
+    public boolean setBytes(State state, byte[] source, int offset, int width)
+    {
+        Workspace workspace = workspaces.get();
+        if(!this.fromBytes(source, offset, width, state.p) || !this.fromBytes(source, offset + width, width, state.q))
+        {
+            return false;
+        }
+        this.toDomain(state.p, state.p, workspace.wide);
+        this.toDomain(state.q, state.q, workspace.wide);
+        return true;
+    }
+
+    private boolean fromBytes(byte[] source, int offset, int width, long[] out)
+    {
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            out[ii] = 0;
+        }
+        for(int ii = 0;ii < width;++ii)
+        {
+            int b = source[offset + width - 1 - ii] & 0xFF;
+            if(ii >= limbs << 3)
+            {
+                if(b != 0)
+                {
+                    return false;
+                }
+                continue;
+            }
+            out[ii >>> 3] |= (long) b << ((ii & 7) << 3);
+        }
+        return compare(out, modulus, limbs) < 0;
+    }
+
+    /*
+     Drops the calling thread's Workspace; the next call on this thread allocates a new one.
+     */
+    public void releaseWorkspace()
+    {
+        workspaces.remove();
+    }
+
+    /*
+     Sets n of state to unit * count, unit being the scaled table's (see precomputeScaled).  count is little
+     endian limbs, of which the first countLimbs are used.
+     */
+    public void setScaledN(State state, long[] count, int countLimbs)
+    {
+        Workspace workspace = workspaces.get();
+        long[] unit = this.scaledUnit();
+        long[] plain = workspace.plain;
+        if(countLimbs <= limbs && topBit(count, countLimbs) <= m.bitLength() + 1)
+        {
+            // count is at most a few times m - reduce by subtraction
+            for(int ii = 0;ii < limbs;++ii)
+            {
+                plain[ii] = ii < countLimbs ? count[ii] : 0;
+            }
+            while(compare(plain, modulus, limbs) >= 0)
+            {
+                subtract(plain, modulus, limbs);
+            }
+        }
+        else
+        {
+            System.arraycopy(toLimbs(toBigInteger(count, countLimbs).mod(m), limbs), 0, plain, 0, limbs);
+        }
+        this.toDomain(plain, plain, workspace.wide);
+        this.multiply(plain, unit, state.n, workspace.wide);
+    }
+
+    private long[] scaledUnit()
+    {
+        ScaledTable table = scaledTable;
+        if(table == null)
+        {
+            throw new IllegalStateException("precomputeScaled has not been called");
+        }
+        Object[] cached = scaledUnit;
+        if(cached == null || cached[0] != table)
+        {
+            cached = new Object[] { table, this.encode(table.unit) };
+            scaledUnit = cached;
+        }
+        return (long[]) cached[1];
+    }
+
+    /*
+     As calculateScaled, jumping state by unit * count in place.  count is little endian limbs.
+     */
+    public void calculateScaled(State state, long[] count, int countLimbs)
+    {
+        ScaledTable table = scaledTable;
+        if(table == null)
+        {
+            throw new IllegalStateException("precomputeScaled has not been called");
+        }
+        Workspace workspace = workspaces.get();
+        int top = topBit(count, countLimbs);
+        PQRelations[] steps;
+        int stepCount;
+        if(top < table.powers.length)
+        {
+            steps = workspace.steps(top + 1);
+            stepCount = plan(count, countLimbs, table.powers, table.windows, steps);
+        }
+        else
+        {
+            BigInteger nPlus = table.unit.multiply(toBigInteger(count, countLimbs));
+            steps = new PQRelations[topBit(nPlus) + 1];
+            stepCount = this.plan(nPlus, steps);
+        }
+        this.calculate(state.p, state.q, state.n, steps, stepCount, workspace);
+    }
+
+    /*
+     Applies a single relation to state in place.
+     */
+    public void calculate(State state, PQRelations relation)
+    {
+        Workspace workspace = workspaces.get();
+        PQRelations[] steps = workspace.steps(1);
+        steps[0] = relation;
+        this.calculate(state.p, state.q, state.n, steps, 1, workspace);
+    }
+
+    /*
+     Writes P then Q of state as unsigned big endian numbers of width bytes each.
+     */
+    public void getBytes(State state, byte[] out, int offset, int width)
+    {
+        Workspace workspace = workspaces.get();
+        this.fromDomain(state.p, workspace.plain, workspace.wide);
+        toBytes(workspace.plain, limbs, out, offset, width);
+        this.fromDomain(state.q, workspace.plain, workspace.wide);
+        toBytes(workspace.plain, limbs, out, offset + width, width);
+    }
+
+    public BigInteger getP(State state)
+    {
+        return this.decode(state.p);
+    }
+
+    public BigInteger getQ(State state)
+    {
+        return this.decode(state.q);
+    }
+
+    /*
+     As plan(count, powers, windows, steps) for a count held in little endian limbs.
+     */
+    protected static int plan(long[] count, int countLimbs, PQRelations[] powers, PQRelations[][] windows, PQRelations[] steps)
+    {
+        int top = topBit(count, countLimbs);
+        int stepCount = 0;
+        if(windows != null)
+        {
+            int windowBits = Integer.numberOfTrailingZeros(windows[0].length + 1);
+            if(top / windowBits < windows.length)
+            {
+                for(int window = top / windowBits;window >= 0;--window)
+                {
+                    int digit = 0;
+                    for(int bit = windowBits - 1;bit >= 0;--bit)
+                    {
+                        digit = (digit << 1) | testBit(count, countLimbs, window * windowBits + bit);
+                    }
+                    if(digit != 0)
+                    {
+                        steps[stepCount++] = windows[window][digit - 1];
+                    }
+                }
+                return stepCount;
+            }
+        }
+
+        for(int bit = top;bit >= 0;--bit)
+        {
+            if(testBit(count, countLimbs, bit) != 0)
+            {
+                steps[stepCount++] = powers[bit];
+            }
+        }
+        return stepCount;
+    }
+
+    private static int testBit(long[] x, int length, int bit)
+    {
+        return bit >>> 6 < length ? (int) (x[bit >>> 6] >>> (bit & 63)) & 1 : 0;
+    }
+
+    // -1 for zero
+    protected static int topBit(long[] x, int length)
+    {
+        for(int ii = length - 1;ii >= 0;--ii)
+        {
+            if(x[ii] != 0)
+            {
+                return (ii << 6) + 63 - Long.numberOfLeadingZeros(x[ii]);
+            }
+        }
+        return -1;
+    }
+
+    private static BigInteger toBigInteger(long[] x, int length)
+    {
+        return new BigInteger(1, toBigEndian(x, length));
+    }
+
+    private static byte[] toBigEndian(long[] x, int length)
+    {
+        byte[] bytes = new byte[length << 3];
+        toBytes(x, length, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    // x as an unsigned big endian number of width bytes, zero padded or truncated to the low bytes
+    protected static void toBytes(long[] x, int length, byte[] out, int offset, int width)
+    {
+        for(int ii = 0;ii < width;++ii)
+        {
+            out[offset + width - 1 - ii] = ii < length << 3 ? (byte) (x[ii >>> 3] >>> ((ii & 7) << 3)) : 0;
+        }
+    }
+
+    // out = pC*p + qC*q + nC*n + constant, accumulated unreduced and reduced once
+    protected void calculate(long[][] relation, long[] p, long[] q, long[] n, long[] out, long[] accumulator)
+    {
+        this.clear(accumulator);
+        this.multiplyAccumulate(relation[0], p, accumulator);
+        this.multiplyAccumulate(relation[1], q, accumulator);
+        this.multiplyAccumulate(relation[2], n, accumulator);
+        this.addShifted(relation[3], accumulator);
+        this.reduceWide(accumulator, out);
+    }
+
+    protected void clear(long[] accumulator)
+    {
+        for(int ii = 0;ii < accumulator.length;++ii)
+        {
+            accumulator[ii] = 0;
+        }
+    }
+
+    /*
+     accumulator += a*b, schoolbook, with no reduction.
+     */
+    protected void multiplyAccumulate(long[] a, long[] b, long[] accumulator)
+    {
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            long carry = 0;
+            long ai = a[ii];
+            for(int jj = 0;jj < limbs;++jj)
+            {
+                long lo = ai * b[jj];
+                long hi = multiplyHigh(ai, b[jj]);
+                long s = accumulator[ii + jj] + lo;
+                hi += Long.compareUnsigned(s, lo) < 0 ? 1 : 0;
+                long s2 = s + carry;
+                hi += Long.compareUnsigned(s2, s) < 0 ? 1 : 0;
+                accumulator[ii + jj] = s2;
+                carry = hi;
+            }
+            propagate(accumulator, ii + limbs, carry);
+        }
+    }
+
+    /*
+     accumulator += x * 2^(64*productShift()).
+     */
+    protected void addShifted(long[] x, long[] accumulator)
+    {
+        int shift = this.productShift();
+        long carry = 0;
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            long s = accumulator[shift + ii] + x[ii];
+            long c1 = Long.compareUnsigned(s, x[ii]) < 0 ? 1 : 0;
+            long s2 = s + carry;
+            long c2 = Long.compareUnsigned(s2, s) < 0 ? 1 : 0;
+            accumulator[shift + ii] = s2;
+            carry = c1 + c2;
+        }
+        propagate(accumulator, shift + limbs, carry);
+    }
+
+    // adds carry into x from limb index up
+    protected static void propagate(long[] x, int index, long carry)
+    {
+        for(int ii = index;ii < x.length && carry != 0;++ii)
+        {
+            long s = x[ii] + carry;
+            carry = Long.compareUnsigned(s, carry) < 0 ? 1 : 0;
+            x[ii] = s;
+        }
+    }
+
+    /*
+     out = (a + b) mod m, for a and b already in [0, m).  out may alias a or b.
+     */
+    protected void add(long[] a, long[] b, long[] out)
+    {
+        long carry = 0;
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            long s = a[ii] + b[ii];
+            long c1 = Long.compareUnsigned(s, a[ii]) < 0 ? 1 : 0;
+            long s2 = s + carry;
+            long c2 = Long.compareUnsigned(s2, s) < 0 ? 1 : 0;
+            out[ii] = s2;
+            carry = c1 + c2;
+        }
+        if(carry != 0 || compare(out, modulus, limbs) >= 0)
+        {
+            subtract(out, modulus, limbs);
+        }
+    }
+
+    protected static int limbsFor(BigInteger m)
+    {
+        return (m.bitLength() + 63) >>> 6;
+    }
+
+    /*
+     x must already be non-negative and fit in the given number of limbs.
+     */
+    protected static long[] toLimbs(BigInteger x, int limbs)
+    {
+        long[] ret = new long[limbs];
+        byte[] bytes = x.toByteArray();
+        int top = Math.min(bytes.length, limbs << 3);
+        for(int ii = 0;ii < top;++ii)
+        {
+            ret[ii >>> 3] |= (bytes[bytes.length - 1 - ii] & 0xFFL) << ((ii & 7) << 3);
+        }
+        return ret;
+    }
+
+    protected static BigInteger fromLimbs(long[] x, int limbs)
+    {
+        byte[] bytes = new byte[(limbs << 3) + 1];
+        for(int ii = 0;ii < limbs << 3;++ii)
+        {
+            bytes[bytes.length - 1 - ii] = (byte) (x[ii >>> 3] >>> ((ii & 7) << 3));
+        }
+        return new BigInteger(bytes);
+    }
+
+    // unsigned comparison of the low limbs of a and b
+    protected static int compare(long[] a, long[] b, int limbs)
+    {
+        for(int ii = limbs - 1;ii >= 0;--ii)
+        {
+            int c = Long.compareUnsigned(a[ii], b[ii]);
+            if(c != 0)
+            {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    // a -= b over the low limbs, wrapping modulo 2^(64*limbs)
+    protected static void subtract(long[] a, long[] b, int limbs)
+    {
+        long borrow = 0;
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            long x = a[ii];
+            long d = x - b[ii];
+            long b1 = Long.compareUnsigned(x, b[ii]) < 0 ? 1 : 0;
+            long d2 = d - borrow;
+            long b2 = Long.compareUnsigned(d, borrow) < 0 ? 1 : 0;
+            a[ii] = d2;
+            borrow = b1 + b2;
+        }
+    }
+
+    /*
+     High 64 bits of the unsigned 128 bit product a*b.
+     */
+    protected static long multiplyHigh(long a, long b)
+    {
+        long aLo = a & 0xFFFFFFFFL;
+        long aHi = a >>> 32;
+        long bLo = b & 0xFFFFFFFFL;
+        long bHi = b >>> 32;
+        long loLo = aLo * bLo;
+        long hiLo = aHi * bLo;
+        long loHi = aLo * bHi;
+        long cross = (loLo >>> 32) + (hiLo & 0xFFFFFFFFL) + loHi;
+        return aHi * bHi + (hiLo >>> 32) + (cross >>> 32);
+    }
+
+    /*
+     wide[0 .. 2*limbs) = a*b, schoolbook.
+     */
+    protected void multiplyWide(long[] a, long[] b, long[] wide)
+    {
+        for(int ii = 0;ii < limbs << 1;++ii)
+        {
+            wide[ii] = 0;
+        }
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            long carry = 0;
+            long ai = a[ii];
+            for(int jj = 0;jj < limbs;++jj)
+            {
+                long lo = ai * b[jj];
+                long hi = multiplyHigh(ai, b[jj]);
+                long s = wide[ii + jj] + lo;
+                hi += Long.compareUnsigned(s, lo) < 0 ? 1 : 0;
+                long s2 = s + carry;
+                hi += Long.compareUnsigned(s2, s) < 0 ? 1 : 0;
+                wide[ii + jj] = s2;
+                carry = hi;
+            }
+            wide[ii + limbs] = carry;
+        }
+    }
+
+    /*
+     P, Q and n of one chain in the limb domain, owned by the caller and updated in place.
+     */
+    public static final class State
+    {
+        protected final long[] p;
+        protected final long[] q;
+        protected final long[] n;
+
+        protected State(int limbs)
+        {
+            this.p = new long[limbs];
+            this.q = new long[limbs];
+            this.n = new long[limbs];
+        }
+    }
+
+    /*
+     Per thread scratch for the evaluation, so calculate() allocates nothing per step or per call.
+     */
+    protected static final class Workspace
+    {
+        protected final long[] newP;
+        protected final long[] newQ;
+        protected final long[] plain;
+        protected final long[] wide;
+        protected final long[] accumulator;
+        private PQRelations[] steps = new PQRelations[64];
+
+        protected Workspace(int limbs)
+        {
+            this.newP = new long[limbs];
+            this.newQ = new long[limbs];
+            this.plain = new long[limbs];
+            this.wide = new long[2 * limbs + 2];
+            this.accumulator = new long[2 * limbs + 2];
+        }
+
+        protected PQRelations[] steps(int length)
+        {
+            if(steps.length < length)
+            {
+                steps = new PQRelations[Math.max(length, steps.length << 1)];
+            }
+            return steps;
+        }
+    }
+
+    protected static class LimbRelations extends PQRelations
+    {
+        protected final long[][] pLimbs;
+        protected final long[][] qLimbs;
+        protected final long[] levelLimbs;
+
+        protected LimbRelations(BigInteger level, Recurrence pRelation, Recurrence qRelation
+                , long[][] pLimbs, long[][] qLimbs, long[] levelLimbs)
+        {
+            super(level, pRelation, qRelation);
+            this.pLimbs = pLimbs;
+            this.qLimbs = qLimbs;
+            this.levelLimbs = levelLimbs;
+        }
+    }
+}
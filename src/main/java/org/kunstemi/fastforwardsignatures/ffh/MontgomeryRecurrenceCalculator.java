@@ -0,0 +1,234 @@
+package org.kunstemi.fastforwardsignatures.ffh;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+
+/*
+ Limb calculator for any odd modulus, e.g. the random primes produced by SignatureUnit.genModulo.
+
+ Every value is held in Montgomery form xR mod m with R = 2^(64k), k being the limb count.  Since the
+ relations are linear, sums stay in Montgomery form and products are brought back by the reduction
+ built into the multiply (CIOS), so P, Q, n and all coefficients remain in this domain for the whole
+ jump chain - values are only converted when they enter and leave calculate().
+ */
+public class MontgomeryRecurrenceCalculator extends LimbRecurrenceCalculator
+{
+    // -m^-1 mod 2^64
+    protected final long mPrime;
+    protected final long[] one;
+    // R^2 mod m, a multiply by which takes a plain value into Montgomery form
+    protected final long[] rSquared;
+
+    public MontgomeryRecurrenceCalculator(int a, int b, int c, int d, int f, int g, BigInteger m)
+    {
+        this(BigInteger.valueOf(a)
+                , BigInteger.valueOf(b)
+                , BigInteger.valueOf(c)
+                , BigInteger.valueOf(d)
+                , BigInteger.valueOf(f)
+                , BigInteger.valueOf(g)
+                , m
+                );
+    }
+
+    public MontgomeryRecurrenceCalculator(BigInteger a, BigInteger b, BigInteger c, BigInteger d
+            , BigInteger f, BigInteger g, BigInteger m)
+    {
+        super(a, b, c, d, f, g, m);
+        if(!isSupported(m))
+        {
+            throw new IllegalArgumentException("Montgomery arithmetic needs an odd modulus : " + m);
+        }
+        this.mPrime = m.modInverse(BigInteger.ONE.shiftLeft(64)).negate().longValue();
+        this.one = new long[limbs];
+        this.one[0] = 1;
+        this.rSquared = toLimbs(BigInteger.ONE.shiftLeft(limbs << 7).mod(m), limbs);
+    }
+
+    public static boolean isSupported(BigInteger m)
+    {
+        return m.signum() > 0 && m.testBit(0) && !m.equals(BigInteger.ONE);
+    }
+
+    // xR mod m - the entry values need a reduction anyway, so the shift costs nothing extra
+    @Override
+    protected long[] encode(BigInteger x)
+    {
+        int k = limbsFor(m);
+        return toLimbs(x.shiftLeft(k << 6).mod(m), k);
+    }
+
+    @Override
+    protected BigInteger decode(long[] x)
+    {
+        long[] plain = new long[limbs];
+        this.fromDomain(x, plain, new long[limbs + 2]);
+        return fromLimbs(plain, limbs);
+    }
+
+    @Override
+    protected void toDomain(long[] plain, long[] out, long[] wide)
+    {
+        this.multiply(plain, rSquared, out, wide);
+    }
+
+    @Override
+    protected void fromDomain(long[] x, long[] out, long[] wide)
+    {
+        this.multiply(x, one, out, wide);
+    }
+
+    /*
+     out = accumulator/R mod m, separated operand scanning.  Products of domain values carry R^2, so the
+     single division by R leaves the sum in Montgomery form - and a domain value shifted by k limbs (times R)
+     comes out as itself.  With three products and a constant the accumulator is below 4*R*m, so the
+     result is below 5m and needs at most four subtractions.
+     */
+    @Override
+    protected void reduceWide(long[] accumulator, long[] out)
+    {
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            // accumulator += mm*m*2^(64ii), clearing limb ii
+            long mm = accumulator[ii] * mPrime;
+            long carry = 0;
+            for(int jj = 0;jj < limbs;++jj)
+            {
+                long lo = mm * modulus[jj];
+                long hi = multiplyHigh(mm, modulus[jj]);
+                long s = accumulator[ii + jj] + lo;
+                hi += Long.compareUnsigned(s, lo) < 0 ? 1 : 0;
+                long s2 = s + carry;
+                hi += Long.compareUnsigned(s2, s) < 0 ? 1 : 0;
+                accumulator[ii + jj] = s2;
+                carry = hi;
+            }
+            propagate(accumulator, ii + limbs, carry);
+        }
+
+        // the quotient is accumulator[limbs .. 2*limbs+2)
+        int top = limbs << 1;
+        while(accumulator[top] != 0 || accumulator[top + 1] != 0 || compare(accumulator, limbs, modulus) >= 0)
+        {
+            long borrow = 0;
+            for(int ii = 0;ii < limbs;++ii)
+            {
+                long x = accumulator[limbs + ii];
+                long d = x - modulus[ii];
+                long b1 = Long.compareUnsigned(x, modulus[ii]) < 0 ? 1 : 0;
+                long d2 = d - borrow;
+                long b2 = Long.compareUnsigned(d, borrow) < 0 ? 1 : 0;
+                accumulator[limbs + ii] = d2;
+                borrow = b1 + b2;
+            }
+            for(int ii = top;ii < top + 2 && borrow != 0;++ii)
+            {
+                long x = accumulator[ii];
+                accumulator[ii] = x - borrow;
+                borrow = x == 0 ? 1 : 0;
+            }
+        }
+        System.arraycopy(accumulator, limbs, out, 0, limbs);
+    }
+
+    @Override
+    protected int productShift()
+    {
+        return limbs;
+    }
+
+    // unsigned comparison of x[offset .. offset+limbs) with y
+    private int compare(long[] x, int offset, long[] y)
+    {
+        for(int ii = limbs - 1;ii >= 0;--ii)
+        {
+            int c = Long.compareUnsigned(x[offset + ii], y[ii]);
+            if(c != 0)
+            {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /*
+     out = a*b/R mod m, coarsely integrated operand scanning.  wide needs limbs+2 longs.
+     */
+    @Override
+    protected void multiply(long[] a, long[] b, long[] out, long[] wide)
+    {
+        for(int ii = 0;ii < limbs + 2;++ii)
+        {
+            wide[ii] = 0;
+        }
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            // wide += a*b[ii]
+            long bi = b[ii];
+            long carry = 0;
+            for(int jj = 0;jj < limbs;++jj)
+            {
+                long lo = a[jj] * bi;
+                long hi = multiplyHigh(a[jj], bi);
+                long s = wide[jj] + lo;
+                hi += Long.compareUnsigned(s, lo) < 0 ? 1 : 0;
+                long s2 = s + carry;
+                hi += Long.compareUnsigned(s2, s) < 0 ? 1 : 0;
+                wide[jj] = s2;
+                carry = hi;
+            }
+            long s = wide[limbs] + carry;
+            wide[limbs + 1] = Long.compareUnsigned(s, carry) < 0 ? 1 : 0;
+            wide[limbs] = s;
+
+            // wide = (wide + mm*m) / 2^64, the low limb cancels by choice of mm
+            long mm = wide[0] * mPrime;
+            long lo = mm * modulus[0];
+            carry = multiplyHigh(mm, modulus[0]);
+            carry += Long.compareUnsigned(wide[0] + lo, lo) < 0 ? 1 : 0;
+            for(int jj = 1;jj < limbs;++jj)
+            {
+                lo = mm * modulus[jj];
+                long hi = multiplyHigh(mm, modulus[jj]);
+                s = wide[jj] + lo;
+                hi += Long.compareUnsigned(s, lo) < 0 ? 1 : 0;
+                long s2 = s + carry;
+                hi += Long.compareUnsigned(s2, s) < 0 ? 1 : 0;
+                wide[jj - 1] = s2;
+                carry = hi;
+            }
+            s = wide[limbs] + carry;
+            wide[limbs - 1] = s;
+            wide[limbs] = wide[limbs + 1] + (Long.compareUnsigned(s, carry) < 0 ? 1 : 0);
+        }
+
+        if(wide[limbs] != 0 || compare(wide, modulus, limbs) >= 0)
+        {
+            subtract(wide, modulus, limbs);
+        }
+        System.arraycopy(wide, 0, out, 0, limbs);
+    }
+}
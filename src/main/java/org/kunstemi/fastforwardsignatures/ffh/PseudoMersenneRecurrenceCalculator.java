@@ -0,0 +1,172 @@
+package org.kunstemi.fastforwardsignatures.ffh;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+
+/*
+ Limb calculator for pseudo-Mersenne moduli of the form m = 2^(64k-1) - c with a small c, which covers
+ both built in moduli 2^255-19 (4 limbs) and 2^383-31 (6 limbs).
+
+ Since 2^(64k) = 2*2^(64k-1) == 2c (mod m), the high half H of a double width product H*2^(64k) + L
+ reduces to L + 2c*H, so a reduction is two cheap folds by a single limb constant and at most a
+ couple of final subtractions - no division as with BigInteger.mod.
+ */
+public class PseudoMersenneRecurrenceCalculator extends LimbRecurrenceCalculator
+{
+    // keeps fold*topLimb well inside a long for sums of several products
+    private static final int MAX_C_BITS = 16;
+
+    protected final long fold;
+
+    public PseudoMersenneRecurrenceCalculator(int a, int b, int c, int d, int f, int g, BigInteger m)
+    {
+        this(BigInteger.valueOf(a)
+                , BigInteger.valueOf(b)
+                , BigInteger.valueOf(c)
+                , BigInteger.valueOf(d)
+                , BigInteger.valueOf(f)
+                , BigInteger.valueOf(g)
+                , m
+                );
+    }
+
+    public PseudoMersenneRecurrenceCalculator(BigInteger a, BigInteger b, BigInteger c, BigInteger d
+            , BigInteger f, BigInteger g, BigInteger m)
+    {
+        super(a, b, c, d, f, g, m);
+        if(!isSupported(m))
+        {
+            throw new IllegalArgumentException("Modulus is not of the form 2^(64k-1) - c : " + m);
+        }
+        this.fold = BigInteger.ONE.shiftLeft(m.bitLength()).subtract(m).shiftLeft(1).longValue();
+    }
+
+    public static boolean isSupported(BigInteger m)
+    {
+        if(m.signum() <= 0 || (m.bitLength() & 63) != 63)
+        {
+            return false;
+        }
+        BigInteger c = BigInteger.ONE.shiftLeft(m.bitLength()).subtract(m);
+        return c.bitLength() <= MAX_C_BITS;
+    }
+
+    @Override
+    protected long[] encode(BigInteger x)
+    {
+        return toLimbs(x.mod(m), limbsFor(m));
+    }
+
+    @Override
+    protected BigInteger decode(long[] x)
+    {
+        return fromLimbs(x, limbs);
+    }
+
+    // plain limbs are the domain here
+    @Override
+    protected void toDomain(long[] plain, long[] out, long[] wide)
+    {
+        System.arraycopy(plain, 0, out, 0, limbs);
+    }
+
+    @Override
+    protected void fromDomain(long[] x, long[] out, long[] wide)
+    {
+        System.arraycopy(x, 0, out, 0, limbs);
+    }
+
+    @Override
+    protected void multiply(long[] a, long[] b, long[] out, long[] wide)
+    {
+        this.multiplyWide(a, b, wide);
+        this.reduce(wide, limbs << 1, out);
+    }
+
+    // a sum of three products of values below 2^(64k-1) and a constant stays below 2^(128k)
+    @Override
+    protected void reduceWide(long[] accumulator, long[] out)
+    {
+        this.reduce(accumulator, (limbs << 1) + 1, out);
+    }
+
+    @Override
+    protected int productShift()
+    {
+        return 0;
+    }
+
+    /*
+     out = wide[0 .. length) mod m, for length up to 2*limbs+1 where the top limb is small.
+     */
+    protected void reduce(long[] wide, int length, long[] out)
+    {
+        // first fold: L + fold*H, leaving a small top limb
+        long carry = 0;
+        for(int ii = 0;ii < limbs;++ii)
+        {
+            long h = wide[limbs + ii];
+            long lo = h * fold;
+            long hi = multiplyHigh(h, fold);
+            long s = wide[ii] + lo;
+            hi += Long.compareUnsigned(s, lo) < 0 ? 1 : 0;
+            long s2 = s + carry;
+            hi += Long.compareUnsigned(s2, s) < 0 ? 1 : 0;
+            out[ii] = s2;
+            carry = hi;
+        }
+        long top = carry;
+        if(length > limbs << 1)
+        {
+            top += wide[limbs << 1] * fold;
+        }
+
+        // second fold: top*2^(64k) == top*fold
+        carry = top * fold;
+        for(int ii = 0;ii < limbs && carry != 0;++ii)
+        {
+            long s = out[ii] + carry;
+            carry = Long.compareUnsigned(s, carry) < 0 ? 1 : 0;
+            out[ii] = s;
+        }
+        if(carry != 0)
+        {
+            // wrapped past 2^(64k) - the remaining value is tiny so this cannot carry again
+            carry = fold;
+            for(int ii = 0;ii < limbs && carry != 0;++ii)
+            {
+                long s = out[ii] + carry;
+                carry = Long.compareUnsigned(s, carry) < 0 ? 1 : 0;
+                out[ii] = s;
+            }
+        }
+
+        while(compare(out, modulus, limbs) >= 0)
+        {
+            subtract(out, modulus, limbs);
+        }
+    }
+}
@@ -25,8 +25,8 @@ THE SOFTWARE.
  */
 
 import java.math.BigInteger;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /*
  This class performs the calculations of multiple step ahead iterations of a 'fast forwardable one way hash function'. 
@@ -59,13 +59,36 @@ import java.util.TreeMap;
 If the a,b,c,d are singular, the matrix should not be invertable, thus 'you can move forward quickly, however not backward'.
 The only exception to this is if you know the cycle length of the system - then you need move forward (cycle_length-1) steps to move backward by one.
 Further techniques are thus needed to ensure (parallel to exogenous variable) that the cycle does not ever repeat and cannot be found.
+
+Threading: the power of two relations live in relationsTable, indexed by bit position (entry i jumps 2^i steps).
+The table is never modified in place - precompute() or a longer than expected jump publishes a longer copy through
+the volatile field, and relations are immutable once published.  A single calculator can therefore be shared by any
+number of threads without locking on the calculate() path.
+
+Windowed mode: precompute(maxJump, w) additionally builds, for every w bit digit position i, the composed relations
+for d * 2^(w*i) with d = 1 .. 2^w-1.  A jump then costs one evaluation per non zero base 2^w digit - at most
+ceil(bits/w) - instead of one per set bit, in exchange for ceil(bits/w) * (2^w-1) stored relations.
+
+Scaled mode: precomputeScaled(unit, bits) stores the relations for unit * 2^i directly, so calculateScaled takes the
+multiple of unit as the jump count and never walks the bits contributed by unit itself.
+
+Fixed jumps: relationFor(nPlus) collapses a whole jump into one cached relation, so a jump that is always the same
+length (e.g. key generation's fast forward to the public end state) costs a single evaluation.
  */
 
 public class RecurrenceCalculator
 {
     protected final BigInteger m;
-    protected final TreeMap<BigInteger, PQRelations> relationsMap = new TreeMap<>();
-    protected PQRelations relations;
+    protected volatile PQRelations[] relationsTable;
+    // windowTable[i][d-1] jumps d * 2^(w*i) steps, null unless windowed mode was requested
+    protected volatile PQRelations[][] windowTable;
+    // relations for multiples of a fixed unit, see precomputeScaled
+    protected volatile ScaledTable scaledTable;
+    // single composed relations for jumps that are made over and over, see relationFor
+    protected final ConcurrentHashMap<BigInteger, PQRelations> fixedJumps = new ConcurrentHashMap<>();
+    protected final PQRelations relations;
+    
+    public static final int MAX_WINDOW_BITS = 12;
     
     public RecurrenceCalculator(int a, int b, int c, int d, int f, int g, int m)
     {
@@ -108,8 +131,33 @@ public class RecurrenceCalculator
         qRelation.setConstant(b.add(d));
         qRelation.setqCoefficient(d.multiply(g).mod(m));
         
-        this.relations = new PQRelations(BigInteger.ONE, pRelation, qRelation);
-        relationsMap.put(BigInteger.ONE, relations);
+        this.relations = this.newRelations(BigInteger.ONE, pRelation, qRelation);
+        this.relationsTable = new PQRelations[] { relations };
+    }
+
+    /*
+     Picks the fastest available calculator for the given modulus - the fixed limb pseudo-Mersenne
+     backend for the built in moduli, Montgomery arithmetic for any other odd (e.g. generated prime)
+     modulus, otherwise the generic BigInteger implementation.
+     */
+    public static RecurrenceCalculator create(int a, int b, int c, int d, int f, int g, BigInteger m)
+    {
+        if(PseudoMersenneRecurrenceCalculator.isSupported(m))
+        {
+            return new PseudoMersenneRecurrenceCalculator(BigInteger.valueOf(a)
+                    , BigInteger.valueOf(b)
+                    , BigInteger.valueOf(c)
+                    , BigInteger.valueOf(d)
+                    , BigInteger.valueOf(f)
+                    , BigInteger.valueOf(g)
+                    , m
+                    );
+        }
+        if(MontgomeryRecurrenceCalculator.isSupported(m))
+        {
+            return new MontgomeryRecurrenceCalculator(a, b, c, d, f, g, m);
+        }
+        return new RecurrenceCalculator(a, b, c, d, f, g, m);
     }
 
 
@@ -127,41 +175,181 @@ public class RecurrenceCalculator
     
     public PQPair calculate(BigInteger p, BigInteger q, BigInteger n, BigInteger nPlus)
     {
-        p = p.mod(m);
-        q = q.mod(m);
-        
-        Entry<BigInteger, PQRelations> maxEntry = relationsMap.lastEntry();
-        BigInteger maxN = maxEntry.getKey();
-        PQRelations maxRelations = maxEntry.getValue();
-        while(maxN.compareTo(nPlus) < 0)
+        PQRelations[] steps = new PQRelations[topBit(nPlus) + 1];
+        int stepCount = this.plan(nPlus, steps);
+        return this.calculate(p, q, n, steps, stepCount);
+    }
+    
+    /*
+     Jumps count * unit steps, where unit is the one given to precomputeScaled.  The jump is decomposed over
+     the scaled table, so a count of b bits takes at most b steps however large unit is.
+     */
+    public PQPair calculateScaled(BigInteger p, BigInteger q, BigInteger n, BigInteger count)
+    {
+        ScaledTable table = scaledTable;
+        if(table == null)
+        {
+            throw new IllegalStateException("precomputeScaled has not been called");
+        }
+        if(topBit(count) >= table.powers.length)
+        {
+            return this.calculate(p, q, n, table.unit.multiply(count));
+        }
+        PQRelations[] steps = new PQRelations[topBit(count) + 1];
+        int stepCount = plan(count, table.powers, table.windows, steps);
+        return this.calculate(p, q, n, steps, stepCount);
+    }
+    
+    /*
+     The states after jumping each of targets steps from (p, q) at n, in the order given.  Every target is
+     decomposed as calculate would, and targets whose decompositions start with the same relations share
+     those steps - so with targets sorted ascending each one costs only the steps after the high bits it has
+     in common with its predecessor.
+     */
+    public PQPair[] calculateMany(BigInteger p, BigInteger q, BigInteger n, BigInteger[] targets)
+    {
+        PQRelations[][] plans = new PQRelations[targets.length][];
+        int[] stepCounts = new int[targets.length];
+        for(int ii = 0;ii < targets.length;++ii)
+        {
+            plans[ii] = new PQRelations[topBit(targets[ii]) + 1];
+            stepCounts[ii] = this.plan(targets[ii], plans[ii]);
+        }
+        return this.calculateMany(p, q, n, plans, stepCounts);
+    }
+    
+    /*
+     As calculateMany for jumps of counts[i] * unit over the scaled table, see calculateScaled.
+     */
+    public PQPair[] calculateScaledMany(BigInteger p, BigInteger q, BigInteger n, BigInteger[] counts)
+    {
+        ScaledTable table = scaledTable;
+        if(table == null)
+        {
+            throw new IllegalStateException("precomputeScaled has not been called");
+        }
+        PQRelations[][] plans = new PQRelations[counts.length][];
+        int[] stepCounts = new int[counts.length];
+        for(int ii = 0;ii < counts.length;++ii)
+        {
+            if(topBit(counts[ii]) >= table.powers.length)
+            {
+                BigInteger nPlus = table.unit.multiply(counts[ii]);
+                plans[ii] = new PQRelations[topBit(nPlus) + 1];
+                stepCounts[ii] = this.plan(nPlus, plans[ii]);
+            }
+            else
+            {
+                plans[ii] = new PQRelations[topBit(counts[ii]) + 1];
+                stepCounts[ii] = plan(counts[ii], table.powers, table.windows, plans[ii]);
+            }
+        }
+        return this.calculateMany(p, q, n, plans, stepCounts);
+    }
+    
+    /*
+     Walks the plans as paths of a trie: the states along the last path are kept, and each plan resumes from
+     the deepest state it shares with the one before.
+     */
+    protected PQPair[] calculateMany(BigInteger p, BigInteger q, BigInteger n, PQRelations[][] plans, int[] stepCounts)
+    {
+        int depth = 0;
+        for(int stepCount : stepCounts)
         {
-            maxRelations = this.multiply(maxRelations, maxRelations);
-            maxN = maxN.shiftLeft(1);
-            relationsMap.put(maxN, maxRelations);
+            depth = Math.max(depth, stepCount);
         }
+        PQPair[] path = new PQPair[depth + 1];
+        BigInteger[] pathN = new BigInteger[depth + 1];
+        path[0] = this.calculate(p, q, n, new PQRelations[0], 0);
+        pathN[0] = n;
         
-        BigInteger remainingNPlus = nPlus;
-        BigInteger currentP = p;
-        BigInteger currentQ = q;
-        BigInteger currentN = n;
-        while(true)
+        PQPair[] results = new PQPair[plans.length];
+        for(int ii = 0;ii < plans.length;++ii)
         {
-            Entry<BigInteger, PQRelations> entry = relationsMap.floorEntry(remainingNPlus);
-            if(entry == null)
+            int shared = ii == 0 ? 0 : sharedSteps(plans[ii - 1], stepCounts[ii - 1], plans[ii], stepCounts[ii]);
+            for(int step = shared;step < stepCounts[ii];++step)
             {
-                break;
+                PQRelations relation = plans[ii][step];
+                path[step + 1] = this.calculate(path[step].getP(), path[step].getQ(), pathN[step], relation);
+                pathN[step + 1] = pathN[step].add(relation.getLevel());
             }
-            
-            BigInteger nJump = entry.getKey();
-            remainingNPlus = remainingNPlus.subtract(nJump);
-            
-            PQRelations relations = entry.getValue();
+            results[ii] = path[stepCounts[ii]];
+        }
+        return results;
+    }
+    
+    // length of the common prefix of two plans - relations are shared table entries, so identity is enough
+    protected static int sharedSteps(PQRelations[] previous, int previousCount, PQRelations[] plan, int stepCount)
+    {
+        int shared = 0;
+        while(shared < previousCount && shared < stepCount && previous[shared] == plan[shared])
+        {
+            ++shared;
+        }
+        return shared;
+    }
+    
+    /*
+     Applies a single (usually composed, see relationFor) relation to (p, q) at n.
+     */
+    public PQPair calculate(BigInteger p, BigInteger q, BigInteger n, PQRelations relation)
+    {
+        return this.calculate(p, q, n, new PQRelations[] { relation }, 1);
+    }
+    
+    /*
+     Returns one relation that jumps nPlus steps, composed on first request and cached for the life of the
+     calculator.  Meant for the handful of jump lengths a caller repeats, not for arbitrary jumps.
+     */
+    public PQRelations relationFor(BigInteger nPlus)
+    {
+        if(nPlus.signum() <= 0)
+        {
+            throw new IllegalArgumentException("A fixed jump must be positive : " + nPlus);
+        }
+        PQRelations relation = fixedJumps.get(nPlus);
+        if(relation != null)
+        {
+            return relation;
+        }
+        
+        // compose over the scaled table when the jump is a multiple of its unit - far fewer relations to multiply
+        PQRelations[] steps;
+        int stepCount;
+        ScaledTable table = scaledTable;
+        BigInteger[] multiple = table == null ? null : nPlus.divideAndRemainder(table.unit);
+        if(multiple != null && multiple[1].signum() == 0 && topBit(multiple[0]) < table.powers.length)
+        {
+            steps = new PQRelations[topBit(multiple[0]) + 1];
+            stepCount = plan(multiple[0], table.powers, table.windows, steps);
+        }
+        else
+        {
+            steps = new PQRelations[topBit(nPlus) + 1];
+            stepCount = this.plan(nPlus, steps);
+        }
+        relation = this.compose(steps, stepCount);
+        PQRelations existing = fixedJumps.putIfAbsent(nPlus, relation);
+        return existing == null ? relation : existing;
+    }
+    
+    /*
+     Applies the given relations in order to (p, q) starting at n.
+     */
+    protected PQPair calculate(BigInteger p, BigInteger q, BigInteger n, PQRelations[] steps, int stepCount)
+    {
+        BigInteger currentP = p.mod(m);
+        BigInteger currentQ = q.mod(m);
+        BigInteger currentN = n;
+        for(int ii = 0;ii < stepCount;++ii)
+        {
+            PQRelations relations = steps[ii];
             BigInteger newP = this.calculate(relations.getpRelation(), currentP, currentQ, currentN).mod(m);
             BigInteger newQ = this.calculate(relations.getqRelation(), currentP, currentQ, currentN).mod(m);
             
             currentP = newP;
             currentQ = newQ;
-            currentN = currentN.add(nJump);
+            currentN = currentN.add(relations.getLevel());
         }
         
         PQPair pair = new PQPair();
@@ -170,6 +358,202 @@ public class RecurrenceCalculator
         return pair;
     }
     
+    /*
+     Builds the power of two relations needed for any jump up to maxJump, so that later calls only read the table.
+     */
+    public void precompute(BigInteger maxJump)
+    {
+        this.relationsFor(maxJump);
+    }
+    
+    /*
+     As precompute(maxJump), and also builds the window table for w bit digits, trading memory for fewer steps.
+     */
+    public synchronized void precompute(BigInteger maxJump, int windowBits)
+    {
+        PQRelations[] table = this.relationsFor(maxJump);
+        windowTable = this.buildWindows(table, topBit(maxJump) + 1, windowBits);
+    }
+    
+    /*
+     Builds the relations for unit * 2^i, i < bits, used by calculateScaled.  Callers that always jump by a
+     multiple of the same large unit then only walk the bits of the multiple.
+     */
+    public void precomputeScaled(BigInteger unit, int bits)
+    {
+        this.precomputeScaled(unit, bits, 0);
+    }
+    
+    /*
+     True if a scaled table for unit covering at least bits bits is already built.
+     */
+    public boolean hasScaledTable(BigInteger unit, int bits)
+    {
+        ScaledTable table = scaledTable;
+        return table != null && table.unit.equals(unit) && table.powers.length >= bits;
+    }
+    
+    /*
+     As precomputeScaled(unit, bits), with a window table over the scaled relations when windowBits > 0.
+     */
+    public synchronized void precomputeScaled(BigInteger unit, int bits, int windowBits)
+    {
+        if(unit.signum() <= 0 || bits < 1)
+        {
+            throw new IllegalArgumentException("Scaled table needs a positive unit and at least one bit");
+        }
+        ScaledTable table = scaledTable;
+        PQRelations[] powers;
+        if(table != null && table.unit.equals(unit) && table.powers.length >= bits)
+        {
+            powers = table.powers;
+        }
+        else
+        {
+            PQRelations[] steps = new PQRelations[topBit(unit) + 1];
+            powers = new PQRelations[bits];
+            powers[0] = this.compose(steps, this.plan(unit, steps));
+            for(int ii = 1;ii < bits;++ii)
+            {
+                powers[ii] = this.multiply(powers[ii - 1], powers[ii - 1]);
+            }
+        }
+        PQRelations[][] windows = windowBits > 0 ? this.buildWindows(powers, bits, windowBits) : null;
+        scaledTable = new ScaledTable(unit, powers, windows);
+    }
+    
+    /*
+     windows[i][d-1] = d * powers[w*i], covering the first bits entries of powers.
+     */
+    private PQRelations[][] buildWindows(PQRelations[] powers, int bits, int windowBits)
+    {
+        if(windowBits < 1 || windowBits > MAX_WINDOW_BITS)
+        {
+            throw new IllegalArgumentException("Window must be between 1 and " + MAX_WINDOW_BITS + " bits : " + windowBits);
+        }
+        int windows = (bits - 1) / windowBits + 1;
+        int digits = (1 << windowBits) - 1;
+        PQRelations[][] built = new PQRelations[windows][digits];
+        for(int window = 0;window < windows;++window)
+        {
+            built[window][0] = powers[window * windowBits];
+            for(int digit = 1;digit < digits;++digit)
+            {
+                built[window][digit] = this.multiply(built[window][digit - 1], built[window][0]);
+            }
+        }
+        return built;
+    }
+    
+    /*
+     Folds a non empty list of steps into the single relation that applies all of them.
+     */
+    protected PQRelations compose(PQRelations[] steps, int stepCount)
+    {
+        PQRelations composed = steps[0];
+        for(int ii = 1;ii < stepCount;++ii)
+        {
+            composed = this.multiply(composed, steps[ii]);
+        }
+        return composed;
+    }
+    
+    /*
+     Breaks a jump of nPlus into the relations to apply, in order, and returns how many were written to steps.
+     steps must have room for topBit(nPlus)+1 entries.  Uses the window table when it covers the jump.
+     */
+    protected int plan(BigInteger nPlus, PQRelations[] steps)
+    {
+        return plan(nPlus, this.relationsFor(nPlus), windowTable, steps);
+    }
+    
+    /*
+     Decomposes count over a table of relations for unit * 2^i (and optionally its window table).  powers must
+     cover the top bit of count.
+     */
+    protected static int plan(BigInteger count, PQRelations[] powers, PQRelations[][] windows, PQRelations[] steps)
+    {
+        int top = topBit(count);
+        int stepCount = 0;
+        if(windows != null)
+        {
+            int windowBits = Integer.numberOfTrailingZeros(windows[0].length + 1);
+            if(top / windowBits < windows.length)
+            {
+                for(int window = top / windowBits;window >= 0;--window)
+                {
+                    int digit = 0;
+                    for(int bit = windowBits - 1;bit >= 0;--bit)
+                    {
+                        digit = (digit << 1) | (count.testBit(window * windowBits + bit) ? 1 : 0);
+                    }
+                    if(digit != 0)
+                    {
+                        steps[stepCount++] = windows[window][digit - 1];
+                    }
+                }
+                return stepCount;
+            }
+        }
+        
+        for(int bit = top;bit >= 0;--bit)
+        {
+            if(count.testBit(bit))
+            {
+                steps[stepCount++] = powers[bit];
+            }
+        }
+        return stepCount;
+    }
+    
+    /*
+     Returns a table holding at least the relations for 2^0 .. 2^(bitLength(nPlus)-1).
+     */
+    protected PQRelations[] relationsFor(BigInteger nPlus)
+    {
+        PQRelations[] table = relationsTable;
+        if(table.length > topBit(nPlus))
+        {
+            return table;
+        }
+        return this.extendRelations(topBit(nPlus) + 1);
+    }
+    
+    /*
+     Squares the largest known relation until the table has the given number of entries, then publishes the
+     longer copy.  Only writers take the lock.
+     */
+    private synchronized PQRelations[] extendRelations(int length)
+    {
+        PQRelations[] table = relationsTable;
+        if(table.length >= length)
+        {
+            return table;
+        }
+        PQRelations[] extended = Arrays.copyOf(table, length);
+        for(int ii = table.length;ii < length;++ii)
+        {
+            extended[ii] = this.multiply(extended[ii - 1], extended[ii - 1]);
+        }
+        relationsTable = extended;
+        return extended;
+    }
+    
+    // highest set bit of a jump, -1 for a jump of zero (or a meaningless negative one)
+    protected static int topBit(BigInteger nPlus)
+    {
+        return nPlus.signum() > 0 ? nPlus.bitLength() - 1 : -1;
+    }
+    
+    /*
+     Factory for every relation the calculator stores, so backends can attach their own encoding.
+     Called from the constructor - implementations may only rely on m.
+     */
+    protected PQRelations newRelations(BigInteger level, Recurrence pRelation, Recurrence qRelation)
+    {
+        return new PQRelations(level, pRelation, qRelation);
+    }
+    
     private BigInteger calculate(Recurrence relation, BigInteger p, BigInteger q, BigInteger n)
     {
         BigInteger result = relation.getpCoefficient().multiply(p)
@@ -179,12 +563,16 @@ public class RecurrenceCalculator
         return result;
     }
     
-    private PQRelations multiply(PQRelations relations1, PQRelations relations2)
+    /*
+     The relation that applies relations1 then relations2.  Each coefficient is a sum of products reduced
+     once.
+     */
+    protected PQRelations multiply(PQRelations relations1, PQRelations relations2)
     {
         BigInteger level = relations1.getLevel().add(relations2.getLevel());
         Recurrence pRelation = this.multiply(relations1, relations2.getpRelation());
         Recurrence qRelation = this.multiply(relations1, relations2.getqRelation());
-        PQRelations relations = new PQRelations(level, pRelation, qRelation);
+        PQRelations relations = this.newRelations(level, pRelation, qRelation);
         return relations;
     }
 
@@ -217,4 +605,18 @@ public class RecurrenceCalculator
 	public BigInteger getM() {
 		return m;
 	}
+	
+    protected static final class ScaledTable
+    {
+        protected final BigInteger unit;
+        protected final PQRelations[] powers;
+        protected final PQRelations[][] windows;
+        
+        protected ScaledTable(BigInteger unit, PQRelations[] powers, PQRelations[][] windows)
+        {
+            this.unit = unit;
+            this.powers = powers;
+            this.windows = windows;
+        }
+    }
 }
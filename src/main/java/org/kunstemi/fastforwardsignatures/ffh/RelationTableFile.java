@@ -0,0 +1,465 @@
+package org.kunstemi.fastforwardsignatures.ffh;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/*
+ Saves the precomputed relation tables of a calculator - the power of two table and the scaled table with its
+ windows - and loads them back into a fresh calculator with the same coefficients and modulus.
+
+ File layout, all big endian:
+   int magic "FFHR", int version
+   modulus, then the calculator's single step relations (identifying the coefficients)
+   int relationsTable length, its relations
+   byte 1 if a scaled table follows: unit, int powers length, int window bits (0 = none), the powers,
+     then for every window row the digit relations 2 .. 2^w-1 (digit 1 is the power itself)
+   long CRC32 of everything before it
+ A relation is its level and the eight p/q coefficients, every number written as an int byte length and the
+ two's complement bytes.
+
+ Only the tables above are saved - a window table over the power of two table (precompute(maxJump, windowBits))
+ is not, and has to be built again after loading if wanted.
+
+ Integrity: besides the CRC, loading checks every count against the bytes actually left before allocating,
+ every composed coefficient against [0, m), every level against its position in its table, and recomposes the last
+ entry of each table (and the last window digit) from the entries before it.  A file that passes the CRC but
+ was written by a broken build therefore still fails unless its top entries happen to be consistent.
+
+ Trust: none of that authenticates the file - the CRC can be recomputed by anyone, and checking every entry
+ would cost as much as building the tables.  Whoever can write the file decides the relations every process
+ loading it verifies with, so read refuses a file, or a directory holding it, that is not owned by the current
+ user or that group or others may write, and refuses outright on file systems without POSIX permissions.
+
+ Loading maps the file read only, so any number of processes on a host can start from the same file without
+ reading it into the heap - the work left is the checksum and decoding each relation into the calculator's own
+ number representation, no compositions.  Files are written to a temporary name and moved into place, so a
+ reader never sees a partial table.
+ */
+public final class RelationTableFile
+{
+    public static final int MAGIC = 0x46464852;
+    public static final int VERSION = 1;
+    // a relation is nine numbers of at least one byte, each after its four byte length
+    private static final int MIN_RELATION_BYTES = 9 * 5;
+
+    private RelationTableFile()
+    {
+    }
+
+    public static void write(RecurrenceCalculator calculator, Path path) throws IOException
+    {
+        PQRelations[] table;
+        RecurrenceCalculator.ScaledTable scaled;
+        synchronized(calculator)
+        {
+            table = calculator.relationsTable;
+            scaled = calculator.scaledTable;
+        }
+
+        Sink out = new Sink();
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.put(calculator.m);
+        out.put(calculator.relations);
+        out.putInt(table.length);
+        for(PQRelations relation : table)
+        {
+            out.put(relation);
+        }
+        out.putByte(scaled == null ? 0 : 1);
+        if(scaled != null)
+        {
+            int windowBits = scaled.windows == null ? 0 : Integer.numberOfTrailingZeros(scaled.windows[0].length + 1);
+            out.put(scaled.unit);
+            out.putInt(scaled.powers.length);
+            out.putInt(windowBits);
+            for(PQRelations relation : scaled.powers)
+            {
+                out.put(relation);
+            }
+            if(scaled.windows != null)
+            {
+                for(PQRelations[] row : scaled.windows)
+                {
+                    for(int digit = 1;digit < row.length;++digit)
+                    {
+                        out.put(row[digit]);
+                    }
+                }
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out.buffer, 0, out.size);
+        out.putLong(crc.getValue());
+
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try
+        {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+            {
+                ByteBuffer content = ByteBuffer.wrap(out.buffer, 0, out.size);
+                while(content.hasRemaining())
+                {
+                    channel.write(content);
+                }
+                channel.force(true);
+            }
+            try
+            {
+                // temporary files are private to the owner, the table is meant to be shared
+                Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+            }
+            catch(UnsupportedOperationException e)
+            {
+                // not a POSIX file system, keep the default permissions
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /*
+     Installs the tables from path into calculator, replacing any it has.  Throws IOException if the file is
+     damaged, of another version, or was written for different coefficients or modulus - any failure to decode
+     is reported that way, never as an unchecked exception.
+     */
+    public static void read(RecurrenceCalculator calculator, Path path) throws IOException
+    {
+        checkTrusted(path);
+        MappedByteBuffer in;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(in.limit() < 16)
+        {
+            throw new IOException("Relation table file is truncated : " + path);
+        }
+        ByteBuffer body = in.duplicate();
+        body.limit(in.limit() - 8);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if(crc.getValue() != in.getLong(in.limit() - 8))
+        {
+            throw new IOException("Relation table checksum mismatch : " + path);
+        }
+        in.limit(in.limit() - 8);
+
+        try
+        {
+            if(in.getInt() != MAGIC)
+            {
+                throw new IOException("Not a relation table file : " + path);
+            }
+            int version = in.getInt();
+            if(version != VERSION)
+            {
+                throw new IOException("Relation table version " + version + " is not supported : " + path);
+            }
+            if(!calculator.m.equals(number(in)) || !same(calculator.relations, relation(calculator, in)))
+            {
+                throw new IOException("Relation table was written for other coefficients or modulus : " + path);
+            }
+
+            PQRelations[] table = new PQRelations[count(in, 1)];
+            for(int ii = 0;ii < table.length;++ii)
+            {
+                table[ii] = relation(calculator, in, BigInteger.ONE.shiftLeft(ii), ii > 0);
+            }
+            table[0] = calculator.relations;
+            checkComposition(calculator, table);
+            RecurrenceCalculator.ScaledTable scaled = null;
+            if(in.get() != 0)
+            {
+                BigInteger unit = number(in);
+                if(unit.signum() <= 0)
+                {
+                    throw new IllegalArgumentException("Bad scaled unit " + unit);
+                }
+                int length = in.getInt();
+                int windowBits = in.getInt();
+                if(length < 1 || length > in.remaining() / MIN_RELATION_BYTES
+                        || windowBits < 0 || windowBits > RecurrenceCalculator.MAX_WINDOW_BITS)
+                {
+                    throw new IllegalArgumentException("Bad scaled table shape " + length + " / " + windowBits);
+                }
+                PQRelations[] powers = new PQRelations[length];
+                for(int ii = 0;ii < powers.length;++ii)
+                {
+                    powers[ii] = relation(calculator, in, unit.shiftLeft(ii), ii > 0);
+                }
+                checkComposition(calculator, powers);
+                PQRelations[][] windows = null;
+                if(windowBits > 0)
+                {
+                    int rows = (powers.length - 1) / windowBits + 1;
+                    int digits = (1 << windowBits) - 1;
+                    if((long) rows * (digits - 1) > in.remaining() / MIN_RELATION_BYTES)
+                    {
+                        throw new IllegalArgumentException("Window table larger than the file");
+                    }
+                    windows = new PQRelations[rows][digits];
+                    for(int window = 0;window < windows.length;++window)
+                    {
+                        windows[window][0] = powers[window * windowBits];
+                        for(int digit = 1;digit < windows[window].length;++digit)
+                        {
+                            BigInteger level = unit.shiftLeft(window * windowBits).multiply(BigInteger.valueOf(digit + 1));
+                            windows[window][digit] = relation(calculator, in, level, true);
+                        }
+                    }
+                    PQRelations[] top = windows[windows.length - 1];
+                    if(top.length > 1 && !same(top[top.length - 1], calculator.multiply(top[top.length - 2], top[0])))
+                    {
+                        throw new IllegalArgumentException("Window relations are inconsistent");
+                    }
+                }
+                scaled = new RecurrenceCalculator.ScaledTable(unit, powers, windows);
+            }
+            if(in.hasRemaining())
+            {
+                throw new IOException("Relation table file is malformed : " + path);
+            }
+
+            synchronized(calculator)
+            {
+                calculator.relationsTable = table;
+                if(scaled != null)
+                {
+                    calculator.scaledTable = scaled;
+                }
+            }
+        }
+        catch(RuntimeException e)
+        {
+            // BufferUnderflowException, IllegalArgumentException and whatever else bad input provokes
+            throw new IOException("Relation table file is malformed : " + path, e);
+        }
+    }
+
+    // a table length, at least min and no more entries than the bytes left could hold
+    private static int count(ByteBuffer in, int min)
+    {
+        int length = in.getInt();
+        if(length < min || length > in.remaining() / MIN_RELATION_BYTES)
+        {
+            throw new IllegalArgumentException("Bad table length " + length);
+        }
+        return length;
+    }
+
+    // each entry of a doubling table is the previous one composed with itself - spot checked at the top
+    // The file and its directory belong to this user and nobody else may write them
+    private static void checkTrusted(Path path) throws IOException
+    {
+        UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+        for(Path checked : new Path[] { path, path.toAbsolutePath().getParent() })
+        {
+            if(!user.equals(Files.getOwner(checked)))
+            {
+                throw new IOException(checked + " is not owned by " + user.getName());
+            }
+            Set<PosixFilePermission> permissions;
+            try
+            {
+                permissions = Files.getPosixFilePermissions(checked);
+            }
+            catch(UnsupportedOperationException e)
+            {
+                throw new IOException("Cannot tell who may write " + checked);
+            }
+            if(permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE))
+            {
+                throw new IOException(checked + " is writable by other users");
+            }
+        }
+    }
+
+    private static void checkComposition(RecurrenceCalculator calculator, PQRelations[] table)
+    {
+        int top = table.length - 1;
+        if(top > 0 && !same(table[top], calculator.multiply(table[top - 1], table[top - 1])))
+        {
+            throw new IllegalArgumentException("Relations are inconsistent at entry " + top);
+        }
+    }
+
+    private static PQRelations relation(RecurrenceCalculator calculator, ByteBuffer in)
+    {
+        BigInteger level = number(in);
+        Recurrence pRelation = recurrence(in);
+        Recurrence qRelation = recurrence(in);
+        return calculator.newRelations(level, pRelation, qRelation);
+    }
+
+    /*
+     A relation that must jump exactly level steps.  Composed relations have every coefficient reduced, the
+     calculator's single step relation (which may head a table) need not.
+     */
+    private static PQRelations relation(RecurrenceCalculator calculator, ByteBuffer in, BigInteger level, boolean composed)
+    {
+        PQRelations relation = relation(calculator, in);
+        if(!relation.getLevel().equals(level))
+        {
+            throw new IllegalArgumentException("Relation for " + relation.getLevel() + " where " + level + " belongs");
+        }
+        if(composed && !(reduced(calculator, relation.getpRelation()) && reduced(calculator, relation.getqRelation())))
+        {
+            throw new IllegalArgumentException("Coefficient out of range");
+        }
+        return relation;
+    }
+
+    private static boolean reduced(RecurrenceCalculator calculator, Recurrence relation)
+    {
+        for(BigInteger value : new BigInteger[] { relation.getpCoefficient(), relation.getqCoefficient()
+                , relation.getnCoefficient(), relation.getConstant() })
+        {
+            if(value.signum() < 0 || value.compareTo(calculator.m) >= 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Recurrence recurrence(ByteBuffer in)
+    {
+        Recurrence relation = new Recurrence();
+        relation.setpCoefficient(number(in));
+        relation.setqCoefficient(number(in));
+        relation.setnCoefficient(number(in));
+        relation.setConstant(number(in));
+        return relation;
+    }
+
+    private static BigInteger number(ByteBuffer in)
+    {
+        int length = in.getInt();
+        if(length < 1 || length > in.remaining())
+        {
+            throw new IllegalArgumentException("Bad number length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new BigInteger(bytes);
+    }
+
+    private static boolean same(PQRelations a, PQRelations b)
+    {
+        return a.getLevel().equals(b.getLevel())
+                && same(a.getpRelation(), b.getpRelation())
+                && same(a.getqRelation(), b.getqRelation());
+    }
+
+    private static boolean same(Recurrence a, Recurrence b)
+    {
+        return a.getpCoefficient().equals(b.getpCoefficient())
+                && a.getqCoefficient().equals(b.getqCoefficient())
+                && a.getnCoefficient().equals(b.getnCoefficient())
+                && a.getConstant().equals(b.getConstant());
+    }
+
+    // growable big endian output, written out in one go once the checksum is known
+    private static final class Sink
+    {
+        private byte[] buffer = new byte[1 << 16];
+        private int size = 0;
+
+        private void ensure(int extra)
+        {
+            if(size + extra > buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + extra));
+            }
+        }
+
+        private void putByte(int value)
+        {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        private void putInt(int value)
+        {
+            ensure(4);
+            for(int shift = 24;shift >= 0;shift -= 8)
+            {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void putLong(long value)
+        {
+            ensure(8);
+            for(int shift = 56;shift >= 0;shift -= 8)
+            {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void put(BigInteger value)
+        {
+            byte[] bytes = value.toByteArray();
+            putInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void put(Recurrence relation)
+        {
+            put(relation.getpCoefficient());
+            put(relation.getqCoefficient());
+            put(relation.getnCoefficient());
+            put(relation.getConstant());
+        }
+
+        private void put(PQRelations relation)
+        {
+            put(relation.getLevel());
+            put(relation.getpRelation());
+            put(relation.getqRelation());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.KeyPair;
+import java.security.MessageDigest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchSignerTest
+{
+    @Test
+    public void testBadKeyFailsOnlyItsItem() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        int size = 8;
+        FFSHPrivateKey[] keys = new FFSHPrivateKey[size];
+        FFSHPublicKey[] publicKeys = new FFSHPublicKey[size];
+        byte[][] messages = new byte[size][];
+        for(int ii = 0;ii < size;++ii)
+        {
+            KeyPair keyPair = unit.createRandomKeyPair();
+            keys[ii] = (FFSHPrivateKey) keyPair.getPrivate();
+            publicKeys[ii] = (FFSHPublicKey) keyPair.getPublic();
+            messages[ii] = ("batch " + ii).getBytes();
+        }
+        keys[3] = null;
+
+        BatchSigner.Result result = new BatchSigner(unit).sign(keys, messages);
+        Assert.assertEquals(size, result.size());
+        Assert.assertEquals(1, result.getFailureCount());
+        Assert.assertFalse(result.isSigned(3));
+        Assert.assertNull(result.getSignature(3));
+        Assert.assertNotNull(result.getFailure(3));
+
+        MessageDigest hasher = SignatureUnit.localHasher();
+        for(int ii = 0;ii < size;++ii)
+        {
+            if(ii == 3)
+            {
+                continue;
+            }
+            // the same bytes as signing the item on its own
+            Assert.assertTrue(result.isSigned(ii));
+            byte[] digest = hasher.digest(messages[ii]);
+            Assert.assertArrayEquals(unit.signDigest(keys[ii], digest), result.getSignature(ii));
+            Assert.assertTrue(unit.verifyDigest(publicKeys[ii], digest, result.getSignature(ii), hasher));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.SignatureException;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchVerifierTest
+{
+    @Test
+    public void testVerdictsMatchSingleVerification() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        int size = 8;
+        FFSHPublicKey[] keys = new FFSHPublicKey[size];
+        byte[][] messages = new byte[size][];
+        byte[][] signatures = new byte[size][];
+        MessageDigest hasher = SignatureUnit.localHasher();
+        for(int ii = 0;ii < size;++ii)
+        {
+            KeyPair keyPair = unit.createRandomKeyPair();
+            keys[ii] = (FFSHPublicKey) keyPair.getPublic();
+            messages[ii] = ("verify " + ii).getBytes();
+            signatures[ii] = unit.signDigest((FFSHPrivateKey) keyPair.getPrivate(), hasher.digest(messages[ii]));
+        }
+        // a tampered signature, a signature under another key and bytes that do not parse
+        signatures[2][signatures[2].length - 1] ^= 1;
+        keys[4] = keys[0];
+        signatures[6] = new byte[] { 1, 2, 3 };
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try
+        {
+            BatchVerifier verifier = new BatchVerifier(unit, executor, 3);
+            BatchVerifier.Result result = verifier.verify(keys, messages, signatures);
+
+            BitSet expected = new BitSet(size);
+            for(int ii = 0;ii < size;++ii)
+            {
+                try
+                {
+                    expected.set(ii, unit.verifyDigest(keys[ii], hasher.digest(messages[ii]), signatures[ii], hasher));
+                }
+                catch(SignatureException e)
+                {
+                    Assert.assertEquals(6, ii);
+                }
+            }
+            Assert.assertEquals(expected, result.getValid());
+            Assert.assertEquals(5, expected.cardinality());
+            Assert.assertFalse(result.allValid());
+            Assert.assertEquals(2, result.getRejected());
+            Assert.assertEquals(1, result.getErrors());
+
+            // totals run across batches
+            verifier.verify(keys, messages, signatures);
+            Assert.assertEquals(10, verifier.getTotalVerified());
+            Assert.assertEquals(4, verifier.getTotalRejected());
+            Assert.assertEquals(2, verifier.getTotalErrors());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FFSHProviderTest
+{
+    private final FFSHProvider provider = new FFSHProvider();
+
+    @Test
+    public void testSignVerify() throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(FFSHProvider.ALGORITHM, provider);
+        generator.initialize(256);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        Signature signer = Signature.getInstance(FFSHProvider.ALGORITHM, provider);
+        signer.initSign(keyPair.getPrivate());
+        signer.update("provider".getBytes());
+        byte[] signature = signer.sign();
+
+        Signature verifier = Signature.getInstance("FFHS", provider);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update("provider".getBytes());
+        Assert.assertTrue(verifier.verify(signature));
+        verifier.update("provider!".getBytes());
+        Assert.assertFalse(verifier.verify(signature));
+    }
+
+    @Test
+    public void testUntrustedModulus() throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(FFSHProvider.ALGORITHM, provider);
+        generator.initialize(256);
+        KeyPair keyPair = generator.generateKeyPair();
+        Signature verifier = Signature.getInstance(FFSHProvider.ALGORITHM, provider);
+        verifier.initVerify(keyPair.getPublic());
+        int calculators = CalculatorRegistry.size();
+
+        // moduli no parameter set is registered for fail without building anything
+        BigInteger prime = BigInteger.probablePrime(300, new Random(3));
+        BigInteger[] moduli = { prime, prime.add(BigInteger.ONE), BigInteger.ONE };
+        for(BigInteger m : moduli)
+        {
+            verifier.update("untrusted".getBytes());
+            Assert.assertFalse(verifier.verify(FFSHKey.toSingles(m, BigInteger.ONE, BigInteger.ONE, BigInteger.ONE, BigInteger.ONE)));
+        }
+        Assert.assertEquals(calculators, CalculatorRegistry.size());
+
+        // garbage is a SignatureException, never an unchecked exception
+        byte[][] garbage = { {}, { 5 }, { -1, 1, 2 }, { (byte) 0x81 } };
+        for(byte[] signature : garbage)
+        {
+            verifier.update("untrusted".getBytes());
+            try
+            {
+                Assert.assertFalse(verifier.verify(signature));
+            }
+            catch(SignatureException e)
+            {
+                // expected for unparseable bytes
+            }
+        }
+
+        // a pinned parameter set refuses signatures under any other
+        Signature signer = Signature.getInstance(FFSHProvider.ALGORITHM, provider);
+        signer.initSign(keyPair.getPrivate());
+        signer.update("pinned".getBytes());
+        byte[] signature = signer.sign();
+        verifier.setParameter(ParameterSet.DEFAULT_384);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update("pinned".getBytes());
+        Assert.assertFalse(verifier.verify(signature));
+    }
+
+    @Test
+    public void testKeyFactory() throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(FFSHProvider.ALGORITHM, provider);
+        generator.initialize(ParameterSet.DEFAULT_256);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        KeyFactory factory = KeyFactory.getInstance(FFSHProvider.ALGORITHM, provider);
+        PublicKey publicKey = factory.generatePublic(new X509EncodedKeySpec(keyPair.getPublic().getEncoded()));
+        PrivateKey privateKey = factory.generatePrivate(new PKCS8EncodedKeySpec(keyPair.getPrivate().getEncoded()));
+
+        Signature signer = Signature.getInstance(FFSHProvider.ALGORITHM, provider);
+        signer.setParameter(SignatureUnit.PARAM_COMPACT, true);
+        signer.initSign(privateKey);
+        signer.update("factory".getBytes());
+        byte[] signature = signer.sign();
+        Assert.assertTrue(CompactSignature.isCompact(signature));
+
+        Signature verifier = Signature.getInstance(FFSHProvider.ALGORITHM, provider);
+        verifier.initVerify(publicKey);
+        verifier.update("factory".getBytes());
+        Assert.assertTrue(verifier.verify(signature));
+    }
+}
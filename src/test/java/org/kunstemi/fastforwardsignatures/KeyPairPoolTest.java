@@ -0,0 +1,115 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.KeyPair;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeyPairPoolTest
+{
+    @Test
+    public void testFillsToHighWaterMark() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        try(KeyPairPool pool = new KeyPairPool(unit, 3, 2))
+        {
+            this.awaitDepth(pool, 3);
+            // the workers block at the mark rather than generating on
+            Thread.sleep(200);
+            Assert.assertEquals(3, pool.getDepth());
+            Assert.assertTrue(pool.getGenerated() <= 3 + 2);
+
+            KeyPair first = pool.take();
+            Assert.assertNotSame(first, pool.take());
+            Assert.assertEquals(0, pool.getMisses());
+            Assert.assertEquals(2, pool.getTaken());
+            this.awaitDepth(pool, 3);
+        }
+    }
+
+    @Test
+    public void testMissAndFailure() throws Exception
+    {
+        // background generation always fails, the caller's own still works
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256)
+        {
+            @Override
+            public KeyPair createRandomKeyPair()
+            {
+                if(Thread.currentThread().getName().startsWith("KeyPairPool"))
+                {
+                    throw new IllegalStateException("no entropy");
+                }
+                return super.createRandomKeyPair();
+            }
+        };
+        try(KeyPairPool pool = new KeyPairPool(unit, 2, 1))
+        {
+            Assert.assertNull(pool.poll());
+            Assert.assertNotNull(pool.take());
+            Assert.assertEquals(1, pool.getMisses());
+            Assert.assertEquals(1, pool.getTaken());
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while(pool.getFailures() < 2 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            // the worker outlives its failures and says why it produces nothing
+            Assert.assertTrue(pool.getFailures() >= 2);
+            Assert.assertEquals("no entropy", pool.getLastFailure().getMessage());
+            Assert.assertTrue(pool.workers[0].isAlive());
+            Assert.assertEquals(0, pool.getGenerated());
+        }
+    }
+
+    @Test
+    public void testCloseDrainsAndStops() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        KeyPairPool pool = new KeyPairPool(unit, 2, 2);
+        this.awaitDepth(pool, 2);
+        pool.close();
+        for(Thread worker : pool.workers)
+        {
+            worker.join(10000);
+            Assert.assertFalse(worker.isAlive());
+        }
+        Assert.assertEquals(0, pool.getDepth());
+        Assert.assertNull(pool.poll());
+    }
+
+    private void awaitDepth(KeyPairPool pool, int depth) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+        while(pool.getDepth() < depth && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(depth, pool.getDepth());
+    }
+}
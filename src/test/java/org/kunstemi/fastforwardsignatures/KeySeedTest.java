@@ -0,0 +1,85 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeySeedTest
+{
+    @Test
+    public void testDeterministic() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        byte[] bytes = new byte[KeySeed.SEED_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        KeySeed seed = new KeySeed(bytes);
+
+        KeyPair first = seed.keyPair(unit, 5);
+        KeyPair again = new KeySeed(bytes).keyPair(unit, 5);
+        Assert.assertArrayEquals(first.getPublic().getEncoded(), again.getPublic().getEncoded());
+        Assert.assertArrayEquals(seed.startStates(unit.modulo(), 5), new KeySeed(bytes).startStates(unit.modulo(), 5));
+        Assert.assertFalse(Arrays.equals(seed.startStates(unit.modulo(), 5), seed.startStates(unit.modulo(), 6)));
+
+        // a stored reference expands back into the same private key
+        KeySeed.Reference reference = KeySeed.Reference.fromBytes(seed.reference(5).toBytes());
+        FFSHPrivateKey expanded = reference.expand(seed, unit.modulo());
+        Assert.assertArrayEquals(first.getPrivate().getEncoded(), expanded.getEncoded());
+
+        Signature signer = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        signer.initSign(expanded);
+        signer.update("seeded".getBytes());
+        byte[] signature = signer.sign();
+        Signature verifier = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        verifier.initVerify(first.getPublic());
+        verifier.update("seeded".getBytes());
+        Assert.assertTrue(verifier.verify(signature));
+    }
+
+    @Test
+    public void testMerkleLeaves() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        KeySeed seed = KeySeed.generate(new SecureRandom());
+        MerkleSigner signer = new MerkleSigner(unit, seed.leafSource(unit), 3);
+        byte[] root = new MerkleSigner(unit, seed.leafSource(unit), 3).getRoot();
+        Assert.assertArrayEquals(root, signer.getRoot());
+        byte[] message = "leaf".getBytes();
+        Assert.assertTrue(MerkleSigner.verify(unit, root, 3, message, signer.sign(message)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongSeed()
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        KeySeed seed = KeySeed.generate(new SecureRandom());
+        KeySeed.generate(new SecureRandom()).reference(1).expand(seed, unit.modulo());
+    }
+}
@@ -0,0 +1,104 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void testBucketEdges()
+    {
+        // below 128 every value has its own bucket
+        Assert.assertEquals(127, LatencyHistogram.index(127));
+        Assert.assertEquals(127, LatencyHistogram.highestEquivalent(LatencyHistogram.index(127)));
+        // from 128 on the buckets double in width with each power of two
+        Assert.assertEquals(128, LatencyHistogram.highestEquivalent(LatencyHistogram.index(128)));
+        Assert.assertEquals(LatencyHistogram.index(256), LatencyHistogram.index(257));
+        Assert.assertEquals(LatencyHistogram.index(256) + 1, LatencyHistogram.index(258));
+        Assert.assertEquals(257, LatencyHistogram.highestEquivalent(LatencyHistogram.index(256)));
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalent(LatencyHistogram.index(Long.MAX_VALUE)));
+
+        // every value is reported to within 1%
+        for(long value = 1;value > 0 && value < Long.MAX_VALUE / 3;value = value * 3 + 1)
+        {
+            long reported = LatencyHistogram.highestEquivalent(LatencyHistogram.index(value));
+            Assert.assertTrue(reported >= value);
+            Assert.assertTrue(reported - value <= value / 100);
+        }
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.percentile(50));
+        for(long value = 1;value <= 100;++value)
+        {
+            histogram.record(value);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50, histogram.percentile(50));
+        Assert.assertEquals(99, histogram.percentile(99));
+        Assert.assertEquals(1, histogram.percentile(0));
+        Assert.assertEquals(50.5, histogram.getMean(), 1e-9);
+
+        // the top percentile is the exact maximum, not the end of its bucket
+        histogram.record(1000001);
+        Assert.assertEquals(1000001, histogram.getMax());
+        Assert.assertEquals(1000001, histogram.percentile(100));
+        Assert.assertEquals(100, histogram.percentile(99));
+
+        // negative values count as zero
+        histogram.record(-5);
+        Assert.assertEquals(102, histogram.getCount());
+        Assert.assertEquals(0, histogram.percentile(0));
+    }
+
+    @Test
+    public void testAdd()
+    {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        LatencyHistogram both = new LatencyHistogram();
+        for(long value = 0;value < 5000;++value)
+        {
+            long recorded = value * value;
+            (value % 2 == 0 ? first : second).record(recorded);
+            both.record(recorded);
+        }
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.add(first);
+        merged.add(second);
+        Assert.assertEquals(both.getCount(), merged.getCount());
+        Assert.assertEquals(both.getMax(), merged.getMax());
+        Assert.assertEquals(both.getMean(), merged.getMean(), 1e-6);
+        for(double percentile : new double[] { 0, 50, 90, 99, 99.9, 100 })
+        {
+            Assert.assertEquals(both.percentile(percentile), merged.percentile(percentile));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LocalRandomTest
+{
+    @Test
+    public void testReseedSchedule() throws Exception
+    {
+        long interval = LocalRandom.getReseedInterval();
+        LocalRandom.setReseedInterval(3);
+        try
+        {
+            // on a fresh thread, so its generator starts from zero uses
+            long[] reseeds = this.onNewThread(() -> {
+                long[] counts = new long[7];
+                for(int ii = 0;ii < counts.length;++ii)
+                {
+                    LocalRandom.current();
+                    counts[ii] = LocalRandom.getReseeds();
+                }
+                return counts;
+            });
+            Assert.assertArrayEquals(new long[] { 0, 0, 1, 1, 1, 2, 2 }, reseeds);
+        }
+        finally
+        {
+            LocalRandom.setReseedInterval(interval);
+        }
+    }
+
+    @Test
+    public void testIndependentThreads() throws Exception
+    {
+        final SecureRandom[] generators = new SecureRandom[2];
+        final byte[][] draws = new byte[2][32];
+        final boolean[] stable = new boolean[2];
+        Thread[] threads = new Thread[2];
+        for(int ii = 0;ii < threads.length;++ii)
+        {
+            final int index = ii;
+            threads[ii] = new Thread(() -> {
+                generators[index] = LocalRandom.current();
+                generators[index].nextBytes(draws[index]);
+                // the same generator for every use on one thread
+                stable[index] = generators[index] == LocalRandom.current();
+            });
+            threads[ii].start();
+        }
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        Assert.assertTrue(stable[0] && stable[1]);
+        Assert.assertNotSame(generators[0], generators[1]);
+        Assert.assertFalse(Arrays.equals(draws[0], draws[1]));
+    }
+
+    private <T> T onNewThread(Callable<T> task) throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            return executor.submit(task).get();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
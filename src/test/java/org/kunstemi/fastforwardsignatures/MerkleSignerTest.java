@@ -0,0 +1,122 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.security.SignatureException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MerkleSignerTest
+{
+    @Test
+    public void testEveryLeafVerifies() throws SignatureException
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        for(int height = 1;height <= 5;++height)
+        {
+            MerkleSigner signer = new MerkleSigner(unit, new RandomLeafSource(unit, 1 << height), height);
+            byte[] root = signer.getRoot();
+            for(int ii = 0;ii < 1 << height;++ii)
+            {
+                byte[] message = ("message " + ii).getBytes();
+                byte[] signature = signer.sign(message);
+                Assert.assertTrue("height " + height + " leaf " + ii, MerkleSigner.verify(unit, root, height, message, signature));
+                
+                // corrupt the last authentication node
+                signature[signature.length - 1] ^= 1;
+                Assert.assertFalse(MerkleSigner.verify(unit, root, height, message, signature));
+            }
+            Assert.assertEquals(0, signer.getRemaining());
+        }
+    }
+    
+    @Test
+    public void testSubtreeBuild() throws SignatureException
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        RandomLeafSource source = new RandomLeafSource(unit, 64);
+
+        // the root from all leaves held at once
+        byte[][] level = new byte[64][];
+        for(int ii = 0;ii < level.length;++ii)
+        {
+            level[ii] = source.keyPair(ii).getPublic().getEncoded();
+        }
+        while(level.length > 1)
+        {
+            byte[][] parents = new byte[level.length >> 1][];
+            for(int ii = 0;ii < parents.length;++ii)
+            {
+                parents[ii] = MerkleSigner.hashNodes(level[ii << 1], level[(ii << 1) + 1]);
+            }
+            level = parents;
+        }
+
+        for(int split = 0;split <= 6;++split)
+        {
+            final int splitHeight = split;
+            MerkleSigner signer = new MerkleSigner(unit, source, 6)
+            {
+                @Override
+                protected int splitHeight()
+                {
+                    return splitHeight;
+                }
+            };
+            Assert.assertArrayEquals(level[0], signer.getRoot());
+            for(int ii = 0;ii < 64;++ii)
+            {
+                byte[] message = ("split " + split + " " + ii).getBytes();
+                Assert.assertTrue(MerkleSigner.verify(unit, level[0], 6, message, signer.sign(message)));
+            }
+        }
+    }
+
+    @Test
+    public void testHeightIsFixed() throws SignatureException
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        MerkleSigner signer = new MerkleSigner(unit, new RandomLeafSource(unit, 4), 2);
+        byte[] message = "height".getBytes();
+        byte[] signature = signer.sign(message);
+        Assert.assertTrue(MerkleSigner.verify(unit, signer.getRoot(), 2, message, signature));
+
+        // a path one node short or long is refused, whatever it hashes to
+        Assert.assertFalse(MerkleSigner.verify(unit, signer.getRoot(), 3, message, signature));
+        Assert.assertFalse(MerkleSigner.verify(unit, signer.getRoot(), 2, message, Arrays.copyOf(signature, signature.length - 32)));
+    }
+
+    @Test(expected = SignatureException.class)
+    public void testExhausted() throws SignatureException
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        MerkleSigner signer = new MerkleSigner(unit, new RandomLeafSource(unit, 2), 1);
+        signer.sign(new byte[] { 1 });
+        signer.sign(new byte[] { 2 });
+        signer.sign(new byte[] { 3 });
+    }
+}
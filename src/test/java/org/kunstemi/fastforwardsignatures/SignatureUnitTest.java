@@ -0,0 +1,350 @@
+package org.kunstemi.fastforwardsignatures;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kunstemi.fastforwardsignatures.ffh.RecurrenceCalculator;
+
+public class SignatureUnitTest
+{
+    @Test
+    public void testFile() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        KeyPair keyPair = unit.createRandomKeyPair();
+        byte[] content = new byte[100000];
+        new Random(3).nextBytes(content);
+        Path path = Files.createTempFile("ffsh", ".bin");
+        try
+        {
+            Files.write(path, content);
+            byte[] signature = unit.sign((FFSHPrivateKey) keyPair.getPrivate(), path);
+            Assert.assertTrue(unit.verify((FFSHPublicKey) keyPair.getPublic(), path, signature));
+
+            // the same as signing the bytes through a direct buffer
+            ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+            direct.put(content).flip();
+            Signature verifier = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+            verifier.initVerify(keyPair.getPublic());
+            verifier.update(direct);
+            Assert.assertTrue(verifier.verify(signature));
+            Assert.assertArrayEquals(SignatureUnit.localHasher().digest(content), SignatureUnit.digest(path));
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testRejectsOtherMessageAndKey() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        KeyPair keyPair = unit.createRandomKeyPair();
+        KeyPair other = unit.createRandomKeyPair();
+        byte[] digest = SignatureUnit.localHasher().digest("message".getBytes());
+        byte[] signature = unit.signDigest((FFSHPrivateKey) keyPair.getPrivate(), digest);
+
+        Assert.assertTrue(unit.verifyDigest((FFSHPublicKey) keyPair.getPublic(), digest, signature, SignatureUnit.localHasher()));
+        byte[] otherDigest = SignatureUnit.localHasher().digest("massage".getBytes());
+        Assert.assertFalse(unit.verifyDigest((FFSHPublicKey) keyPair.getPublic(), otherDigest, signature, SignatureUnit.localHasher()));
+        Assert.assertFalse(unit.verifyDigest((FFSHPublicKey) other.getPublic(), digest, signature, SignatureUnit.localHasher()));
+    }
+
+    @Test
+    public void testParallelChains() throws Exception
+    {
+        SignatureUnit serial = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        SignatureUnit parallel = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            parallel.setParameter(SignatureUnit.PARAM_PARALLEL, Boolean.TRUE);
+            parallel.setParameter(SignatureUnit.PARAM_EXECUTOR, executor);
+            Assert.assertEquals(Boolean.TRUE, parallel.getParameter(SignatureUnit.PARAM_PARALLEL));
+            KeyPair pair = serial.createRandomKeyPair();
+            byte[] message = "parallel".getBytes("UTF-8");
+
+            serial.initSign(pair.getPrivate());
+            serial.update(message);
+            byte[] serialSignature = serial.sign();
+            parallel.initSign(pair.getPrivate());
+            parallel.update(message);
+            byte[] parallelSignature = parallel.sign();
+            Assert.assertArrayEquals(serialSignature, parallelSignature);
+
+            // each verifies the other's signature
+            serial.initVerify(pair.getPublic());
+            serial.update(message);
+            Assert.assertTrue(serial.verify(parallelSignature));
+            parallel.initVerify(pair.getPublic());
+            parallel.update(message);
+            Assert.assertTrue(parallel.verify(serialSignature));
+            parallel.update("other".getBytes("UTF-8"));
+            Assert.assertFalse(parallel.verify(serialSignature));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLimbPathMatchesGeneralPath() throws Exception
+    {
+        // a modulus with no special form, so the Montgomery calculator is used
+        BigInteger m = BigInteger.probablePrime(300, new Random(11));
+        SignatureUnit limbs = new SignatureUnit(m);
+        SignatureUnit general = new SignatureUnit(m);
+        general.setParameter(SignatureUnit.PARAM_PARALLEL, Boolean.TRUE);
+        KeyPair pair = limbs.createRandomKeyPair();
+        byte[] message = "limbs".getBytes("UTF-8");
+
+        limbs.initSign(pair.getPrivate());
+        limbs.update(message);
+        byte[] signature = limbs.sign();
+        general.initSign(pair.getPrivate());
+        general.update(message);
+        Assert.assertArrayEquals(general.sign(), signature);
+
+        for(SignatureUnit unit : new SignatureUnit[] { limbs, general })
+        {
+            unit.initVerify(pair.getPublic());
+            unit.update(message);
+            Assert.assertTrue(unit.verify(signature));
+            unit.update("other".getBytes("UTF-8"));
+            Assert.assertFalse(unit.verify(signature));
+        }
+
+        // a value pushed past the modulus is left to the general path, which still rejects it
+        byte[] tampered = signature.clone();
+        tampered[tampered.length - 1] ^= 1;
+        limbs.initVerify(pair.getPublic());
+        limbs.update(message);
+        Assert.assertFalse(limbs.verify(tampered));
+
+        // a value plus the modulus is the same residue, but only the reduced encoding is a valid signature
+        BigInteger[] vals = FFSHKey.toArray(signature);
+        for(int ii = 1;ii < vals.length;++ii)
+        {
+            BigInteger[] unreduced = vals.clone();
+            unreduced[ii] = unreduced[ii].add(m);
+            byte[] malleated = FFSHKey.toSingle(unreduced);
+            for(SignatureUnit unit : new SignatureUnit[] { limbs, general })
+            {
+                unit.initVerify(pair.getPublic());
+                unit.update(message);
+                Assert.assertFalse(unit.verify(malleated));
+            }
+        }
+    }
+
+    @Test
+    public void testCompactUnreduced() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(ParameterSet.DEFAULT_256);
+        KeyPair keyPair = unit.createRandomKeyPair();
+        unit.setParameter(SignatureUnit.PARAM_COMPACT, true);
+        unit.initSign(keyPair.getPrivate());
+        unit.update("unreduced".getBytes());
+        byte[] signature = unit.sign();
+        BigInteger m = ParameterSet.DEFAULT_256.getModulus();
+        BigInteger[] vals = CompactSignature.decode(signature);
+        for(int ii = 1;ii < vals.length;++ii)
+        {
+            if(vals[ii].add(m).bitLength() > 256)
+            {
+                continue;
+            }
+            BigInteger[] unreduced = vals.clone();
+            unreduced[ii] = unreduced[ii].add(m);
+            byte[] malleated = CompactSignature.encode(ParameterSet.DEFAULT_256, unreduced[1], unreduced[2], unreduced[3], unreduced[4]);
+            unit.initVerify(keyPair.getPublic());
+            unit.update("unreduced".getBytes());
+            Assert.assertFalse(unit.verify(malleated));
+        }
+        unit.initVerify(keyPair.getPublic());
+        unit.update("unreduced".getBytes());
+        Assert.assertTrue(unit.verify(signature));
+    }
+
+    @Test
+    public void testCodecRoundTrip() throws Exception
+    {
+        Random random = new Random(5);
+        BigInteger generated = BigInteger.probablePrime(379, random);
+        for(BigInteger m : new BigInteger[] { FFSHKey.DEFAULT_MODULO_256, FFSHKey.DEFAULT_MODULO_384, generated })
+        {
+            BigInteger[] vals = new BigInteger[] { m, BigInteger.ZERO, BigInteger.ONE
+                    , m.subtract(BigInteger.ONE), new BigInteger(m.bitLength() + 8, random).mod(m) };
+            byte[] encoded = FFSHKey.toSingle(vals);
+            Assert.assertEquals(FFSHKey.encodedLength(m, 4), encoded.length);
+            Assert.assertArrayEquals(vals, FFSHKey.toArray(encoded));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length + 3);
+            direct.position(3);
+            FFSHKey.encode(vals, direct);
+            Assert.assertFalse(direct.hasRemaining());
+            direct.position(3);
+            Assert.assertArrayEquals(vals, FFSHKey.decode(direct));
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(ParameterSet.DEFAULT_256);
+        KeyPair keyPair = unit.createRandomKeyPair();
+        unit.setParameter(SignatureUnit.PARAM_COMPACT, true);
+        unit.initSign(keyPair.getPrivate());
+        unit.update("compact".getBytes());
+        byte[] signature = unit.sign();
+        Assert.assertEquals(CompactSignature.length(ParameterSet.DEFAULT_256), signature.length);
+        Assert.assertEquals(134, signature.length);
+
+        // the default unit for the modulus finds the registered set, and reads both formats
+        Signature verifier = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update("compact".getBytes());
+        Assert.assertTrue(verifier.verify(signature));
+
+        BigInteger[] vals = CompactSignature.decode(signature);
+        byte[] original = FFSHKey.toSingle(vals);
+        verifier.update("compact".getBytes());
+        Assert.assertTrue(verifier.verify(original));
+    }
+
+    @Test
+    public void testCompactFingerprint() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(ParameterSet.DEFAULT_256);
+        KeyPair keyPair = unit.createRandomKeyPair();
+        unit.setParameter(SignatureUnit.PARAM_COMPACT, true);
+        unit.initSign(keyPair.getPrivate());
+        unit.update("fingerprint".getBytes());
+        byte[] signature = unit.sign();
+        Signature verifier = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        verifier.initVerify(keyPair.getPublic());
+
+        // the id is right but the fingerprint is not what is registered here
+        byte[] altered = signature.clone();
+        altered[2] ^= 1;
+        verifier.update("fingerprint".getBytes());
+        Assert.assertFalse(verifier.verify(altered));
+
+        // a set with the same modulus but other coefficients is not this unit's, whatever the values
+        ParameterSet other = ParameterSet.register(new ParameterSet(77, new int[] {1, 2, 3, 4, 5, 6}, FFSHKey.DEFAULT_MODULO_256));
+        altered = signature.clone();
+        CompactSignature.putHeader(other, altered);
+        verifier.update("fingerprint".getBytes());
+        Assert.assertFalse(verifier.verify(altered));
+
+        verifier.update("fingerprint".getBytes());
+        Assert.assertTrue(verifier.verify(signature));
+    }
+
+    @Test(expected = java.security.InvalidParameterException.class)
+    public void testCompactNeedsParameterSet() throws Exception
+    {
+        SignatureUnit unit = new SignatureUnit(BigInteger.probablePrime(300, new Random(1)));
+        unit.setParameter(SignatureUnit.PARAM_COMPACT, true);
+    }
+
+    @Test
+    public void testSharedCalculator() throws Exception
+    {
+        SignatureUnit first = new SignatureUnit(FFSHKey.DEFAULT_MODULO_256);
+        SignatureUnit second = new SignatureUnit(ParameterSet.DEFAULT_256);
+        Assert.assertSame(first.calculator, second.calculator);
+        Assert.assertSame(((SignatureUnit) SignatureUnit.signature()).calculator, ((SignatureUnit) SignatureUnit.signature()).calculator);
+
+        KeyPair keyPair = first.createRandomKeyPair();
+        byte[] digest = SignatureUnit.localHasher().digest("shared".getBytes());
+        byte[] signature = first.signDigest((FFSHPrivateKey) keyPair.getPrivate(), digest);
+        Assert.assertTrue(second.verifyDigest((FFSHPublicKey) keyPair.getPublic(), digest, signature, SignatureUnit.localHasher()));
+    }
+
+    @Test
+    public void testRegistryBound() throws Exception
+    {
+        RecurrenceCalculator registered = CalculatorRegistry.get(ParameterSet.DEFAULT_256);
+        BigInteger m = BigInteger.probablePrime(61, new Random(13));
+        int[] first = { 1, 2, 3, 4, 5, 6 };
+        RecurrenceCalculator oldest = CalculatorRegistry.get(first, m);
+        for(int ii = 0;ii < CalculatorRegistry.MAX_UNREGISTERED;++ii)
+        {
+            CalculatorRegistry.get(new int[] { 1, 2, 3, 4, 5, 7 + ii }, m);
+        }
+        // the oldest unregistered entry made way, the registered set did not
+        Assert.assertNotSame(oldest, CalculatorRegistry.get(first, m));
+        Assert.assertSame(registered, CalculatorRegistry.get(ParameterSet.DEFAULT_256));
+        Assert.assertTrue(CalculatorRegistry.size() <= CalculatorRegistry.MAX_UNREGISTERED + 2);
+
+        Assert.assertTrue(CalculatorRegistry.remove(first, m));
+        Assert.assertFalse(CalculatorRegistry.remove(first, m));
+    }
+
+    @Test
+    public void testRegistryConcurrentBuild() throws Exception
+    {
+        BigInteger m = BigInteger.probablePrime(61, new Random(17));
+        int[] coefficients = { 1, 2, 3, 4, 5, 99 };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            // every caller gets the one calculator built for the key
+            List<Future<RecurrenceCalculator>> futures = new ArrayList<>();
+            for(int ii = 0;ii < 8;++ii)
+            {
+                futures.add(executor.submit(() -> CalculatorRegistry.get(coefficients, m)));
+            }
+            RecurrenceCalculator calculator = futures.get(0).get();
+            for(Future<RecurrenceCalculator> future : futures)
+            {
+                Assert.assertSame(calculator, future.get());
+            }
+            Assert.assertTrue(calculator.hasScaledTable(BigInteger.valueOf(Integer.MAX_VALUE), 257));
+        }
+        finally
+        {
+            executor.shutdown();
+            CalculatorRegistry.remove(coefficients, m);
+        }
+    }
+}
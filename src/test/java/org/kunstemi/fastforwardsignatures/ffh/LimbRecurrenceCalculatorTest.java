@@ -0,0 +1,278 @@
+package org.kunstemi.fastforwardsignatures.ffh;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class LimbRecurrenceCalculatorTest
+{
+    private static final BigInteger MODULO_256 = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+    private static final BigInteger MODULO_384 = BigInteger.ONE.shiftLeft(383).subtract(BigInteger.valueOf(31));
+
+    @Test
+    public void testPseudoMersenneSupport()
+    {
+        Assert.assertTrue(PseudoMersenneRecurrenceCalculator.isSupported(MODULO_256));
+        Assert.assertTrue(PseudoMersenneRecurrenceCalculator.isSupported(MODULO_384));
+        Assert.assertFalse(PseudoMersenneRecurrenceCalculator.isSupported(BigInteger.valueOf(8191)));
+        Assert.assertTrue(RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256) instanceof PseudoMersenneRecurrenceCalculator);
+    }
+
+    @Test
+    public void testPseudoMersenne256()
+    {
+        this.compare(new PseudoMersenneRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_256), MODULO_256);
+    }
+
+    @Test
+    public void testPseudoMersenne384()
+    {
+        this.compare(new PseudoMersenneRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_384), MODULO_384);
+    }
+
+    @Test
+    public void testWindowed()
+    {
+        RecurrenceCalculator calculator = new PseudoMersenneRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_256);
+        calculator.precompute(BigInteger.ONE.shiftLeft(290), 4);
+        this.compare(calculator, MODULO_256);
+    }
+
+    @Test
+    public void testMontgomery()
+    {
+        Random random = new Random(7);
+        BigInteger generated = BigInteger.probablePrime(379, random);
+        Assert.assertTrue(RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, generated) instanceof MontgomeryRecurrenceCalculator);
+        this.compare(new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, generated), generated);
+
+        // a full width modulus, so sums can carry out of the top limb
+        BigInteger fullWidth = BigInteger.ONE.shiftLeft(384).subtract(BigInteger.valueOf(317));
+        this.compare(new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, fullWidth), fullWidth);
+
+        this.compare(new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_256), MODULO_256);
+        this.compare(new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, BigInteger.valueOf(8191)), BigInteger.valueOf(8191));
+    }
+
+    @Test
+    public void testComposition()
+    {
+        // the limb composed relations must match the BigInteger ones coefficient for coefficient
+        BigInteger generated = BigInteger.probablePrime(379, new Random(7));
+        BigInteger fullWidth = BigInteger.ONE.shiftLeft(384).subtract(BigInteger.valueOf(317));
+        BigInteger jump = new BigInteger(290, new Random(5));
+        for(RecurrenceCalculator calculator : new RecurrenceCalculator[] {
+                new PseudoMersenneRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_384)
+                , new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, generated)
+                , new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, fullWidth) })
+        {
+            RecurrenceCalculator reference = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, calculator.getM());
+            PQRelations expected = reference.relationFor(jump);
+            PQRelations actual = calculator.relationFor(jump);
+            Assert.assertEquals(expected.getLevel(), actual.getLevel());
+            this.compare(expected.getpRelation(), actual.getpRelation());
+            this.compare(expected.getqRelation(), actual.getqRelation());
+        }
+    }
+
+    private void compare(Recurrence expected, Recurrence actual)
+    {
+        Assert.assertEquals(expected.getpCoefficient(), actual.getpCoefficient());
+        Assert.assertEquals(expected.getqCoefficient(), actual.getqCoefficient());
+        Assert.assertEquals(expected.getnCoefficient(), actual.getnCoefficient());
+        Assert.assertEquals(expected.getConstant(), actual.getConstant());
+    }
+
+    @Test
+    public void testCalculateMany()
+    {
+        BigInteger generated = BigInteger.probablePrime(379, new Random(7));
+        for(RecurrenceCalculator calculator : new RecurrenceCalculator[] {
+                new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_256)
+                , new PseudoMersenneRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_256)
+                , new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, generated) })
+        {
+            BigInteger unit = BigInteger.valueOf(Integer.MAX_VALUE);
+            calculator.precomputeScaled(unit, 257, 4);
+            Random random = new Random(9);
+            BigInteger p = new BigInteger(200, random);
+            BigInteger q = new BigInteger(200, random);
+            BigInteger n = new BigInteger(100, random);
+
+            // shared high bits, a repeat, a zero jump and one past the scaled table
+            BigInteger base = new BigInteger(256, random).setBit(255);
+            BigInteger[] targets = { BigInteger.ZERO, base, base.add(BigInteger.valueOf(12345)), base.add(BigInteger.valueOf(12345))
+                    , base.setBit(200), BigInteger.ONE.shiftLeft(256), BigInteger.ONE.shiftLeft(300).add(base) };
+            PQPair[] many = calculator.calculateMany(p, q, n, targets);
+            PQPair[] scaled = calculator.calculateScaledMany(p, q, n, targets);
+            for(int ii = 0;ii < targets.length;++ii)
+            {
+                PQPair expected = calculator.calculate(p, q, n, targets[ii]);
+                Assert.assertEquals(expected.getP(), many[ii].getP());
+                Assert.assertEquals(expected.getQ(), many[ii].getQ());
+                expected = calculator.calculate(p, q, n, unit.multiply(targets[ii]));
+                Assert.assertEquals(expected.getP(), scaled[ii].getP());
+                Assert.assertEquals(expected.getQ(), scaled[ii].getQ());
+            }
+        }
+    }
+
+    @Test
+    public void testState()
+    {
+        BigInteger generated = BigInteger.probablePrime(379, new Random(7));
+        this.compareState(new PseudoMersenneRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_256), MODULO_256);
+        this.compareState(new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, generated), generated);
+    }
+
+    // the state API gives the same values as calculateScaled, for counts inside and beyond the scaled table
+    private void compareState(LimbRecurrenceCalculator calculator, BigInteger m)
+    {
+        BigInteger unit = BigInteger.valueOf(Integer.MAX_VALUE);
+        calculator.precomputeScaled(unit, 257, 4);
+        LimbRecurrenceCalculator.State state = calculator.newState();
+        int width = m.bitLength() / 8 + 1;
+        byte[] bytes = new byte[2 * width];
+        Random random = new Random(3);
+        for(int ii = 0;ii < 10;++ii)
+        {
+            BigInteger p = new BigInteger(m.bitLength() - 1, random);
+            BigInteger q = new BigInteger(m.bitLength() - 1, random);
+            BigInteger start = new BigInteger(256, random);
+            BigInteger count = ii == 9 ? BigInteger.ONE.shiftLeft(300).add(start) : new BigInteger(257, random);
+            long[] startLimbs = toLimbs(start, 4);
+            long[] countLimbs = toLimbs(count, 5);
+
+            PQPair expected = calculator.calculateScaled(p, q, unit.multiply(start), count);
+            calculator.set(state, p, q);
+            calculator.setScaledN(state, startLimbs, 4);
+            calculator.calculateScaled(state, countLimbs, 5);
+            Assert.assertEquals(expected.getP(), calculator.getP(state));
+            Assert.assertEquals(expected.getQ(), calculator.getQ(state));
+
+            // round trip through the byte form
+            calculator.getBytes(state, bytes, 0, width);
+            Assert.assertTrue(calculator.setBytes(state, bytes, 0, width));
+            Assert.assertEquals(expected.getP(), calculator.getP(state));
+            Assert.assertEquals(expected.getQ(), calculator.getQ(state));
+        }
+
+        // unreduced values are refused
+        byte[] unreduced = new byte[2 * width];
+        byte[] modulus = m.toByteArray();
+        System.arraycopy(modulus, 0, unreduced, width - modulus.length, modulus.length);
+        Assert.assertFalse(calculator.setBytes(state, unreduced, 0, width));
+    }
+
+    @Test
+    public void testStateAllocation()
+    {
+        // allocated bytes per thread is a HotSpot extension
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        BigInteger generated = BigInteger.probablePrime(379, new Random(7));
+        this.checkAllocation(threads, new PseudoMersenneRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_256), MODULO_256);
+        this.checkAllocation(threads, new MontgomeryRecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, generated), generated);
+    }
+
+    // once the thread's workspace exists, set/calculateScaled/getBytes on a state allocate nothing
+    private void checkAllocation(com.sun.management.ThreadMXBean threads, LimbRecurrenceCalculator calculator, BigInteger m)
+    {
+        calculator.precomputeScaled(BigInteger.valueOf(Integer.MAX_VALUE), 257, 4);
+        LimbRecurrenceCalculator.State state = calculator.newState();
+        int width = m.bitLength() / 8 + 1;
+        byte[] bytes = new byte[2 * width];
+        Random random = new Random(5);
+        calculator.set(state, new BigInteger(m.bitLength() - 1, random), new BigInteger(m.bitLength() - 1, random));
+        calculator.getBytes(state, bytes, 0, width);
+        long[][] counts = new long[16][];
+        for(int ii = 0;ii < counts.length;++ii)
+        {
+            counts[ii] = toLimbs(new BigInteger(257, random), 5);
+        }
+        long[] start = toLimbs(new BigInteger(256, random), 4);
+
+        int rounds = 2000;
+        long threadId = Thread.currentThread().getId();
+        long allocated = 0;
+        // the first passes warm up the workspace and let the JIT settle
+        for(int pass = 0;pass < 3;++pass)
+        {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for(int ii = 0;ii < rounds;++ii)
+            {
+                Assert.assertTrue(calculator.setBytes(state, bytes, 0, width));
+                calculator.setScaledN(state, start, 4);
+                calculator.calculateScaled(state, counts[ii % counts.length], 5);
+                calculator.getBytes(state, bytes, 0, width);
+            }
+            allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        }
+        // a few bytes of slack for the measurement itself, far below one array per round
+        Assert.assertTrue("allocated " + allocated + " bytes in " + rounds + " rounds", allocated < rounds);
+    }
+
+    private static long[] toLimbs(BigInteger value, int length)
+    {
+        long[] limbs = new long[length];
+        for(int ii = 0;ii < length;++ii)
+        {
+            limbs[ii] = value.shiftRight(ii * 64).longValue();
+        }
+        return limbs;
+    }
+
+    private void compare(RecurrenceCalculator calculator, BigInteger m)
+    {
+        RecurrenceCalculator reference = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m);
+        Random random = new Random(42);
+        for(int ii = 0;ii < 20;++ii)
+        {
+            BigInteger p = new BigInteger(m.bitLength() + 8, random);
+            BigInteger q = new BigInteger(m.bitLength() + 8, random);
+            BigInteger n = new BigInteger(290, random);
+            BigInteger nPlus = new BigInteger(290, random);
+
+            PQPair expected = reference.calculate(p, q, n, nPlus);
+            PQPair actual = calculator.calculate(p, q, n, nPlus);
+            Assert.assertEquals(expected.getP(), actual.getP());
+            Assert.assertEquals(expected.getQ(), actual.getQ());
+        }
+
+        // values at the top of the range exercise the final reductions
+        BigInteger top = m.subtract(BigInteger.ONE);
+        PQPair expected = reference.calculate(top, top, top, BigInteger.ONE.shiftLeft(287).subtract(BigInteger.ONE));
+        PQPair actual = calculator.calculate(top, top, top, BigInteger.ONE.shiftLeft(287).subtract(BigInteger.ONE));
+        Assert.assertEquals(expected.getP(), actual.getP());
+        Assert.assertEquals(expected.getQ(), actual.getQ());
+    }
+}
@@ -25,6 +25,11 @@ THE SOFTWARE.
  */
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -138,6 +143,113 @@ public class RecurrenceCalculatorTest
         Assert.assertTrue(directPair.getQ().equals(singleStepPair.getQ()));
     }
     
+    @Test
+    public void testWindowed()
+    {
+        BigInteger m = BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE);
+        BigInteger maxJump = BigInteger.ONE.shiftLeft(200);
+        RecurrenceCalculator plain = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m);
+        for(int windowBits = 1;windowBits <= 5;++windowBits)
+        {
+            RecurrenceCalculator windowed = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m);
+            windowed.precompute(maxJump, windowBits);
+            for(int ii = 0;ii < 10;++ii)
+            {
+                BigInteger nPlus = maxJump.subtract(BigInteger.valueOf(ii * 12345678L)).shiftRight(ii * 7);
+                PQPair expected = plain.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.valueOf(ii), nPlus);
+                PQPair actual = windowed.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.valueOf(ii), nPlus);
+                Assert.assertTrue(expected.getP().equals(actual.getP()));
+                Assert.assertTrue(expected.getQ().equals(actual.getQ()));
+            }
+            
+            // beyond the window table falls back to the power of two relations
+            PQPair expected = plain.calculate(BigInteger.ONE, BigInteger.ONE, BigInteger.ZERO, maxJump.shiftLeft(3));
+            PQPair actual = windowed.calculate(BigInteger.ONE, BigInteger.ONE, BigInteger.ZERO, maxJump.shiftLeft(3));
+            Assert.assertTrue(expected.getP().equals(actual.getP()));
+        }
+    }
+    
+    @Test
+    public void testScaled()
+    {
+        BigInteger m = BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE);
+        BigInteger unit = BigInteger.valueOf(Integer.MAX_VALUE);
+        RecurrenceCalculator plain = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m);
+        RecurrenceCalculator scaled = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m);
+        scaled.precomputeScaled(unit, 65);
+        for(int ii = 0;ii < 10;++ii)
+        {
+            BigInteger count = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.valueOf(ii * 987654321L)).shiftRight(ii * 5);
+            BigInteger n = BigInteger.valueOf(ii).multiply(unit);
+            PQPair expected = plain.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), n, unit.multiply(count));
+            PQPair actual = scaled.calculateScaled(BigInteger.valueOf(7), BigInteger.valueOf(8), n, count);
+            Assert.assertTrue(expected.getP().equals(actual.getP()));
+            Assert.assertTrue(expected.getQ().equals(actual.getQ()));
+        }
+        
+        scaled.precomputeScaled(unit, 65, 3);
+        BigInteger count = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.valueOf(12345));
+        PQPair expected = plain.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.ZERO, unit.multiply(count));
+        PQPair actual = scaled.calculateScaled(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.ZERO, count);
+        Assert.assertTrue(expected.getP().equals(actual.getP()));
+        Assert.assertTrue(expected.getQ().equals(actual.getQ()));
+    }
+    
+    @Test
+    public void testFixedJump()
+    {
+        BigInteger m = BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE);
+        BigInteger unit = BigInteger.valueOf(Integer.MAX_VALUE);
+        BigInteger jump = unit.shiftLeft(64);
+        RecurrenceCalculator calculator = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m);
+        PQPair expected = calculator.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.valueOf(3), jump);
+        
+        PQRelations relation = calculator.relationFor(jump);
+        Assert.assertTrue(relation == calculator.relationFor(jump));
+        PQPair actual = calculator.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.valueOf(3), relation);
+        Assert.assertTrue(expected.getP().equals(actual.getP()));
+        Assert.assertTrue(expected.getQ().equals(actual.getQ()));
+        
+        // composed over the scaled table instead
+        RecurrenceCalculator scaled = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m);
+        scaled.precomputeScaled(unit, 65);
+        actual = scaled.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.valueOf(3), scaled.relationFor(jump.add(unit)));
+        expected = calculator.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.valueOf(3), jump.add(unit));
+        Assert.assertTrue(expected.getP().equals(actual.getP()));
+        Assert.assertTrue(expected.getQ().equals(actual.getQ()));
+    }
+    
+    @Test
+    public void testSharedBetweenThreads() throws Exception
+    {
+        final BigInteger m = BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE);
+        final RecurrenceCalculator shared = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<PQPair>> results = new ArrayList<>();
+            for(int ii = 0;ii < 64;++ii)
+            {
+                // growing jumps force the table to be extended while other threads read it
+                final BigInteger nPlus = BigInteger.ONE.shiftLeft(64 + ii * 4).subtract(BigInteger.valueOf(ii));
+                results.add(executor.submit(() -> shared.calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.ZERO, nPlus)));
+            }
+            for(int ii = 0;ii < 64;++ii)
+            {
+                BigInteger nPlus = BigInteger.ONE.shiftLeft(64 + ii * 4).subtract(BigInteger.valueOf(ii));
+                PQPair expected = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, m)
+                        .calculate(BigInteger.valueOf(7), BigInteger.valueOf(8), BigInteger.ZERO, nPlus);
+                PQPair actual = results.get(ii).get();
+                Assert.assertTrue(expected.getP().equals(actual.getP()));
+                Assert.assertTrue(expected.getQ().equals(actual.getQ()));
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+    
     @Test
     public void testPerformance()
     {
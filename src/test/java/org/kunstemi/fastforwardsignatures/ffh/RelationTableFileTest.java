@@ -0,0 +1,201 @@
+package org.kunstemi.fastforwardsignatures.ffh;
+
+/*
+ * The MIT License
+
+Copyright (c) 2015 Axlacor Ltd, (Michael Kunstel)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RelationTableFileTest
+{
+    private static final BigInteger MODULO_256 = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+    private static final BigInteger UNIT = BigInteger.valueOf(Integer.MAX_VALUE);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        RecurrenceCalculator built = RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256);
+        built.precompute(BigInteger.ONE.shiftLeft(100));
+        built.precomputeScaled(UNIT, 257, 4);
+        Path path = folder.getRoot().toPath().resolve("tables");
+        RelationTableFile.write(built, path);
+
+        // loaded into the limb backend and into the BigInteger reference
+        RecurrenceCalculator loaded = RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256);
+        RelationTableFile.read(loaded, path);
+        Assert.assertTrue(loaded.hasScaledTable(UNIT, 257));
+        RecurrenceCalculator reference = new RecurrenceCalculator(911, 691, 2733, 2073, -1357, 2468, MODULO_256);
+        RelationTableFile.read(reference, path);
+
+        Random random = new Random(11);
+        for(int ii = 0;ii < 10;++ii)
+        {
+            BigInteger p = new BigInteger(255, random);
+            BigInteger q = new BigInteger(255, random);
+            BigInteger count = new BigInteger(256, random);
+            PQPair expected = built.calculateScaled(p, q, BigInteger.ZERO, count);
+            for(RecurrenceCalculator calculator : new RecurrenceCalculator[] { loaded, reference })
+            {
+                PQPair actual = calculator.calculateScaled(p, q, BigInteger.ZERO, count);
+                Assert.assertEquals(expected.getP(), actual.getP());
+                Assert.assertEquals(expected.getQ(), actual.getQ());
+            }
+            BigInteger nPlus = new BigInteger(100, random);
+            Assert.assertEquals(built.calculate(p, q, BigInteger.ONE, nPlus).getP(), loaded.calculate(p, q, BigInteger.ONE, nPlus).getP());
+        }
+    }
+
+    @Test
+    public void testMalformedWithValidChecksum() throws IOException
+    {
+        RecurrenceCalculator built = RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256);
+        built.precompute(BigInteger.ONE.shiftLeft(40));
+        built.precomputeScaled(UNIT, 20, 3);
+        Path path = folder.getRoot().toPath().resolve("tables");
+        RelationTableFile.write(built, path);
+        byte[] content = Files.readAllBytes(path);
+
+        // offset of the relations table length: magic, version, modulus, single step relation
+        ByteBuffer in = ByteBuffer.wrap(content);
+        in.position(8);
+        for(int ii = 0;ii < 10;++ii)
+        {
+            in.position(in.position() + 4 + in.getInt(in.position()));
+        }
+        int lengthOffset = in.position();
+
+        // lengths that would allocate nonsense, then a coefficient of the top (spot checked) relation changed
+        int entries = ByteBuffer.wrap(content).getInt(lengthOffset);
+        int lastEntry = lengthOffset + 4;
+        for(int ii = 0;ii < 9 * (entries - 1);++ii)
+        {
+            lastEntry += 4 + ByteBuffer.wrap(content).getInt(lastEntry);
+        }
+        int pCoefficient = lastEntry + 4 + ByteBuffer.wrap(content).getInt(lastEntry) + 4;
+        int[][] edits = { { lengthOffset, -1 }, { lengthOffset, Integer.MAX_VALUE }, { lengthOffset, 0 } };
+        for(int[] edit : edits)
+        {
+            byte[] damaged = content.clone();
+            ByteBuffer.wrap(damaged).putInt(edit[0], edit[1]);
+            this.assertRejected(damaged, path);
+        }
+        byte[] damaged = content.clone();
+        damaged[pCoefficient + 1] ^= 1;
+        this.assertRejected(damaged, path);
+    }
+
+    @Test
+    public void testUntrustedFile() throws IOException
+    {
+        RecurrenceCalculator built = RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256);
+        built.precompute(BigInteger.ONE.shiftLeft(40));
+        Path path = folder.getRoot().toPath().resolve("tables");
+        RelationTableFile.write(built, path);
+        RelationTableFile.read(RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256), path);
+
+        // a file or directory someone else could have written is not loaded, however good its content
+        String[][] permissions = { { "rw-rw-r--", "rwx------" }, { "rw-r--rw-", "rwx------" }, { "rw-r--r--", "rwxrwxrwx" } };
+        for(String[] permission : permissions)
+        {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permission[0]));
+            Files.setPosixFilePermissions(folder.getRoot().toPath(), PosixFilePermissions.fromString(permission[1]));
+            try
+            {
+                RelationTableFile.read(RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256), path);
+                Assert.fail(permission[0] + " " + permission[1]);
+            }
+            catch(IOException e)
+            {
+                // expected
+            }
+        }
+        Files.setPosixFilePermissions(folder.getRoot().toPath(), PosixFilePermissions.fromString("rwx------"));
+    }
+
+    private void assertRejected(byte[] content, Path path) throws IOException
+    {
+        // recompute the checksum so only the structural checks can catch it
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        ByteBuffer.wrap(content).putLong(content.length - 8, crc.getValue());
+        Files.write(path, content);
+        try
+        {
+            RelationTableFile.read(RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256), path);
+            Assert.fail();
+        }
+        catch(IOException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRejected() throws IOException
+    {
+        RecurrenceCalculator built = RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256);
+        built.precomputeScaled(UNIT, 20);
+        Path path = folder.getRoot().toPath().resolve("tables");
+        RelationTableFile.write(built, path);
+
+        // other coefficients
+        try
+        {
+            RelationTableFile.read(RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2469, MODULO_256), path);
+            Assert.fail();
+        }
+        catch(IOException e)
+        {
+            // expected
+        }
+
+        // a damaged byte fails the checksum
+        byte[] content = Files.readAllBytes(path);
+        content[content.length / 2] ^= 1;
+        Files.write(path, content);
+        try
+        {
+            RelationTableFile.read(RecurrenceCalculator.create(911, 691, 2733, 2073, -1357, 2468, MODULO_256), path);
+            Assert.fail();
+        }
+        catch(IOException e)
+        {
+            // expected
+        }
+    }
+}